@@ -0,0 +1,169 @@
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Control de admisión de conexiones. Limita la cola de trabajo y las conexiones simultáneas por cliente,
+// y descarta carga (503) cuando el tiempo en cola se mantiene por encima del objetivo (estilo CoDel).
+public class AdmissionController {
+
+   // Acción a realizar con una conexión que no se va a atender
+   public interface RejectHandler {
+      void reject(Socket socket, int retryAfterSeconds);
+   }
+
+   private final ThreadPoolExecutor executor;
+   private final Function<Socket, Runnable> handlerFactory;
+   private final RejectHandler rejectHandler;
+
+   // Conexiones activas (en cola o en ejecución) por dirección IP
+   private final ConcurrentHashMap<InetAddress, Integer> activePerClient = new ConcurrentHashMap<>();
+   private volatile int maxPerClient;
+
+   // Parámetros de CoDel: retardo objetivo en cola e intervalo que debe mantenerse por encima para empezar a descartar
+   private volatile long targetDelayNanos;
+   private volatile long intervalNanos;
+   private volatile int retryAfterSeconds;
+
+   // Estado de CoDel (protegido por this)
+   private long firstAboveTime = 0;
+   private boolean dropping = false;
+
+   private final AtomicLong rejectedQueueFull = new AtomicLong();
+   private final AtomicLong rejectedPerClient = new AtomicLong();
+   private final AtomicLong rejectedQueueDelay = new AtomicLong();
+
+   public AdmissionController(ServerConfig config, int defaultPoolSize, Function<Socket, Runnable> handlerFactory, RejectHandler rejectHandler) {
+      int poolSize = Math.max(1, config.getInt("server.threads", defaultPoolSize));
+      int queueCapacity = Math.max(1, config.getInt("admission.queueCapacity", 100));
+
+      this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity));
+      this.handlerFactory = handlerFactory;
+      this.rejectHandler = rejectHandler;
+      applyLimits(config);
+
+      System.out.println("Pool de hilos: " + poolSize + ", cola de trabajo: " + queueCapacity + ", conexiones por cliente: " + maxPerClient);
+   }
+
+   private void applyLimits(ServerConfig config) {
+      this.maxPerClient = config.getInt("admission.maxPerClient", 8);
+      this.targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("admission.targetDelayMs", 1000));
+      this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("admission.intervalMs", 5000));
+      this.retryAfterSeconds = config.getInt("admission.retryAfterSeconds", 2);
+   }
+
+   // Aplica una configuración recargada. La capacidad de la cola solo cambia al reiniciar
+   public void reconfigure(ServerConfig config, int defaultPoolSize) {
+      int poolSize = Math.max(1, config.getInt("server.threads", defaultPoolSize));
+
+      // El máximo nunca puede quedar por debajo del núcleo, el orden depende de si crece o decrece
+      if (poolSize > executor.getMaximumPoolSize()) {
+         executor.setMaximumPoolSize(poolSize);
+         executor.setCorePoolSize(poolSize);
+      } else {
+         executor.setCorePoolSize(poolSize);
+         executor.setMaximumPoolSize(poolSize);
+      }
+      applyLimits(config);
+
+      System.out.println("Pool de hilos: " + poolSize + ", conexiones por cliente: " + maxPerClient);
+   }
+
+   // Deja de admitir conexiones y espera hasta la fecha límite (System.nanoTime) a que terminen las admitidas.
+   // Regresa false si hubo que interrumpir peticiones en curso
+   public boolean shutdown(long deadline) throws InterruptedException {
+      executor.shutdown();
+      if (executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+         return true;
+      }
+      executor.shutdownNow();
+      return false;
+   }
+
+   // Intenta encolar la conexión. Si la cola está llena o el cliente excede su límite se responde 503 inmediatamente
+   public void submit(Socket socket) {
+      InetAddress client = socket.getInetAddress();
+
+      if (activePerClient.merge(client, 1, Integer::sum) > maxPerClient) {
+         release(client);
+         rejectedPerClient.incrementAndGet();
+         System.out.println("\u001B[31mLímite de conexiones alcanzado para " + client + "\u001B[0m");
+         rejectHandler.reject(socket, retryAfterSeconds);
+         return;
+      }
+
+      try {
+         executor.execute(new AdmittedTask(socket, client, System.nanoTime()));
+      } catch (RejectedExecutionException e) {
+         // Cola llena o servidor apagándose
+         release(client);
+         rejectedQueueFull.incrementAndGet();
+         System.out.println("\u001B[31mCola de trabajo llena, rechazando conexión de " + client + "\u001B[0m");
+         rejectHandler.reject(socket, retryAfterSeconds);
+      }
+   }
+
+   private void release(InetAddress client) {
+      activePerClient.computeIfPresent(client, (key, count) -> count <= 1 ? null : count - 1);
+   }
+
+   // Decide si una tarea que esperó "sojourn" nanosegundos en la cola debe descartarse
+   private synchronized boolean shouldShed(long sojourn, long now) {
+      if (sojourn < targetDelayNanos) {
+         // La cola se vació lo suficiente: salir del estado de descarte
+         firstAboveTime = 0;
+         dropping = false;
+         return false;
+      }
+
+      if (dropping) {
+         return true;
+      }
+
+      if (firstAboveTime == 0) {
+         firstAboveTime = now + intervalNanos;
+      } else if (now >= firstAboveTime) {
+         dropping = true;
+         return true;
+      }
+      return false;
+   }
+
+   // Estado del control de admisión (se muestra en GET /health)
+   public String getStats() {
+      return "En cola: " + executor.getQueue().size() + "\n"
+              + "Hilos activos: " + executor.getActiveCount() + "/" + executor.getMaximumPoolSize() + "\n"
+              + "Rechazadas por cola llena: " + rejectedQueueFull.get() + "\n"
+              + "Rechazadas por limite por cliente: " + rejectedPerClient.get() + "\n"
+              + "Rechazadas por tiempo en cola: " + rejectedQueueDelay.get() + "\n";
+   }
+
+   // Conexión admitida, en espera de un hilo del pool
+   private class AdmittedTask implements Runnable {
+      private final Socket socket;
+      private final InetAddress client;
+      private final long enqueuedAt;
+
+      AdmittedTask(Socket socket, InetAddress client, long enqueuedAt) {
+         this.socket = socket;
+         this.client = client;
+         this.enqueuedAt = enqueuedAt;
+      }
+
+      public void run() {
+         try {
+            long now = System.nanoTime();
+            if (shouldShed(now - enqueuedAt, now)) {
+               rejectedQueueDelay.incrementAndGet();
+               System.out.println("\u001B[31mTiempo en cola excedido (" + TimeUnit.NANOSECONDS.toMillis(now - enqueuedAt) + " ms), rechazando conexión de " + client + "\u001B[0m");
+               rejectHandler.reject(socket, retryAfterSeconds);
+               return;
+            }
+            handlerFactory.apply(socket).run();
+         } finally {
+            release(client);
+         }
+      }
+   }
+}
@@ -0,0 +1,79 @@
+import java.text.Normalizer;
+
+// Transliterador a ASCII basado en tabla. Produce el mismo resultado que
+// Normalizer.normalize(texto, NFD).replaceAll("[^\\p{ASCII}]", "") pero sin compilar regex
+// ni normalizar la cadena completa en cada respuesta.
+public final class AsciiTransliterator {
+
+   // Rango cubierto por la tabla: Latin-1 Supplement, Latin Extended-A y Latin Extended-B
+   private static final int TABLE_LIMIT = 0x250;
+
+   // Para cada caracter del rango, su equivalente ASCII ("" si se elimina)
+   private static final String[] TABLE = new String[TABLE_LIMIT];
+
+   // Buffer reutilizable por hilo para construir la cadena de salida
+   private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+   // Si un buffer crece más de esto, no se conserva para no retener memoria en el hilo
+   private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+   static {
+      for (int c = 0; c < TABLE_LIMIT; c++) {
+         TABLE[c] = fold(String.valueOf((char) c));
+      }
+   }
+
+   private AsciiTransliterator() {
+   }
+
+   // Elimina acentos y caracteres no ASCII. Si la cadena ya es ASCII se regresa la misma instancia (sin asignar memoria)
+   public static String toAscii(String text) {
+      if (text == null) {
+         return null;
+      }
+
+      int length = text.length();
+      int firstNonAscii = 0;
+      while (firstNonAscii < length && text.charAt(firstNonAscii) < 0x80) {
+         firstNonAscii++;
+      }
+      if (firstNonAscii == length) {
+         return text;
+      }
+
+      StringBuilder builder = BUFFER.get();
+      builder.setLength(0);
+      builder.append(text, 0, firstNonAscii);
+
+      for (int i = firstNonAscii; i < length; i++) {
+         char c = text.charAt(i);
+         if (c < 0x80) {
+            builder.append(c);
+         } else if (c < TABLE_LIMIT) {
+            builder.append(TABLE[c]);
+         } else {
+            // Fuera de la tabla (Latin Extended Additional, signos combinantes, etc.) se usa el camino lento por caracter
+            builder.append(fold(String.valueOf(c)));
+         }
+      }
+
+      String result = builder.toString();
+      if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+         BUFFER.remove();
+      }
+      return result;
+   }
+
+   // Descompone el texto (NFD) y conserva solo los caracteres ASCII
+   private static String fold(String text) {
+      String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+      StringBuilder builder = new StringBuilder(decomposed.length());
+      for (int i = 0; i < decomposed.length(); i++) {
+         char c = decomposed.charAt(i);
+         if (c < 0x80) {
+            builder.append(c);
+         }
+      }
+      return builder.toString();
+   }
+}
@@ -0,0 +1,379 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+// Carga de varios archivos en una sola petición PUT a partir de un archivo zip o tar.
+// Las entradas se extraen como flujo a un directorio temporal dentro del destino, validando cada una igual que un PUT
+// individual (extensión conocida en la tabla de mime types y JSON bien formado). Solo si todas son válidas se mueven
+// a su lugar; si algo falla al moverlas se restauran los archivos anteriores, así el lote se aplica completo o no se aplica.
+// El tamaño descomprimido se cuenta mientras se extrae, por archivo (validation.maxBytes) y por lote (request.maxBatchBytes).
+public class BatchUploader {
+
+   public static final String ZIP = "application/zip";
+   public static final String TAR = "application/x-tar";
+
+   private static final int MAX_LONG_NAME = 4096;   // Tamaño máximo de un nombre largo de GNU tar
+
+   // Error en el contenido del lote (se responde con 400)
+   public static class BatchException extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      public BatchException(String message) {
+         super(message);
+      }
+   }
+
+   private final Map<String, String> mimeTypes;
+   private final BodyValidator validator;
+   private final Predicate<Path> isProtected;
+   private final int maxEntries;
+   private final long maxEntryBytes;
+   private final long maxBatchBytes;
+   private long extractedBytes = 0;
+
+   // isProtected indica las rutas de destino que no se pueden escribir por HTTP (configuración, ocultos, etc.)
+   public BatchUploader(Map<String, String> mimeTypes, BodyValidator validator, Predicate<Path> isProtected, int maxEntries, long maxBatchBytes) {
+      this.mimeTypes = mimeTypes;
+      this.validator = validator;
+      this.isProtected = isProtected;
+      this.maxEntries = maxEntries;
+      this.maxEntryBytes = validator.getMaxBytes();
+      this.maxBatchBytes = maxBatchBytes;
+   }
+
+   public static boolean isArchive(String contentType) {
+      return ZIP.equals(contentType) || TAR.equals(contentType);
+   }
+
+   // Extrae y aplica el lote. Regresa las rutas (relativas al destino) de los archivos escritos.
+   // Los directorios de destino que no existían se eliminan si el lote se rechaza
+   public List<String> upload(InputStream archive, String contentType, Path targetDir) throws BatchException, IOException {
+      Path firstCreated = targetDir.toAbsolutePath().normalize();
+      while (firstCreated.getParent() != null && Files.notExists(firstCreated.getParent())) {
+         firstCreated = firstCreated.getParent();
+      }
+      Path existing = Files.exists(firstCreated) ? firstCreated : firstCreated.getParent();
+      if (existing != null && !Files.isDirectory(existing)) {
+         throw new BatchException("El destino del lote no es un directorio");
+      }
+      if (Files.exists(firstCreated)) {
+         firstCreated = null;
+      }
+      Files.createDirectories(targetDir);
+
+      boolean applied = false;
+      Path staging = Files.createTempDirectory(targetDir, ".batch-");
+      try {
+         List<String> entries;
+         try {
+            entries = ZIP.equals(contentType) ? extractZip(archive, staging) : extractTar(archive, staging);
+         } catch (EOFException | ZipException e) {
+            // El contenido lo envía el cliente: un archivo truncado o dañado es un error de la petición
+            throw new BatchException("Archivo del lote truncado o dañado");
+         }
+         if (entries.isEmpty()) {
+            throw new BatchException("El lote no contiene archivos");
+         }
+         commit(entries, staging, targetDir);
+         applied = true;
+         return entries;
+      } finally {
+         deleteRecursively(staging);
+         if (!applied && firstCreated != null) {
+            deleteEmptyDirectories(targetDir.toAbsolutePath().normalize(), firstCreated);
+         }
+      }
+   }
+
+   private List<String> extractZip(InputStream archive, Path staging) throws BatchException, IOException {
+      List<String> entries = new ArrayList<>();
+      try (ZipInputStream zip = new ZipInputStream(archive)) {
+         ZipEntry entry;
+         while ((entry = nextZipEntry(zip)) != null) {
+            if (!entry.isDirectory()) {
+               extractEntry(entry.getName(), zip, staging, entries);
+            }
+         }
+      }
+      return entries;
+   }
+
+   // ZipInputStream lanza IllegalArgumentException si el nombre de una entrada no es UTF-8 válido
+   private static ZipEntry nextZipEntry(ZipInputStream zip) throws BatchException, IOException {
+      try {
+         return zip.getNextEntry();
+      } catch (IllegalArgumentException e) {
+         throw new BatchException("Nombre de entrada inválido en el zip");
+      }
+   }
+
+   // Lector mínimo de tar (ustar y nombres largos de GNU)
+   private List<String> extractTar(InputStream archive, Path staging) throws BatchException, IOException {
+      List<String> entries = new ArrayList<>();
+      DataInputStream tar = new DataInputStream(new BufferedInputStream(archive));
+      byte[] header = new byte[512];
+      String longName = null;
+
+      while (true) {
+         // Sin más datos termina el tar; una cabecera incompleta es un archivo truncado
+         int first = tar.read();
+         if (first < 0) {
+            break;
+         }
+         header[0] = (byte) first;
+         tar.readFully(header, 1, header.length - 1);
+         if (isZeroBlock(header)) {
+            break;   // Fin del archivo
+         }
+
+         String name = tarString(header, 0, 100);
+         long size = tarOctal(header, 124, 12);
+         char type = (char) header[156];
+         if (tarString(header, 257, 5).equals("ustar")) {
+            String prefix = tarString(header, 345, 155);
+            if (!prefix.isEmpty()) name = prefix + "/" + name;
+         }
+         long padding = (512 - size % 512) % 512;
+
+         if (size < 0) {
+            throw new BatchException("Tamaño de entrada inválido en el tar");
+         }
+
+         if (type == 'L') {
+            // El contenido es el nombre de la siguiente entrada
+            if (size > MAX_LONG_NAME) {
+               throw new BatchException("Nombre de entrada demasiado largo en el tar");
+            }
+            byte[] nameBytes = new byte[(int) size];
+            tar.readFully(nameBytes);
+            longName = tarString(nameBytes, 0, nameBytes.length);
+         } else if (type == '0' || type == '\0') {
+            if (longName != null) name = longName;
+            longName = null;
+            extractEntry(name, new BoundedInputStream(tar, size), staging, entries);
+         } else {
+            // Directorios, enlaces y cabeceras extendidas no se extraen
+            longName = null;
+            tar.skipNBytes(size);
+         }
+         tar.skipNBytes(padding);
+      }
+      return entries;
+   }
+
+   private void extractEntry(String name, InputStream content, Path staging, List<String> entries) throws BatchException, IOException {
+      if (entries.size() >= maxEntries) {
+         throw new BatchException("El lote excede el maximo de " + maxEntries + " archivos");
+      }
+
+      // Evitar que una entrada escriba fuera del directorio destino (../, rutas absolutas)
+      Path relative;
+      try {
+         relative = Path.of(name).normalize();
+      } catch (InvalidPathException e) {
+         throw new BatchException("Ruta no permitida en el lote: " + name);
+      }
+      Path targetDir = staging.getParent();
+      if (relative.isAbsolute() || relative.startsWith("..") || relative.toString().isEmpty()
+              || isProtected.test(targetDir.resolve(relative))) {
+         throw new BatchException("Ruta no permitida en el lote: " + name);
+      }
+
+      String fileName = relative.getFileName().toString();
+      String extension = fileName.substring(fileName.lastIndexOf(".") + 1);
+      String mimeType = mimeTypes.get(extension);
+      if (!fileName.contains(".") || mimeType == null) {
+         throw new BatchException("Tipo de archivo no permitido en el lote: " + name);
+      }
+
+      // Un archivo existente (o de este mismo lote) no puede usarse como directorio ni reemplazarse por uno
+      Path target = targetDir.resolve(relative);
+      if (Files.isDirectory(target)) {
+         throw new BatchException("Ya existe un directorio con el nombre " + name);
+      }
+      for (Path parent = target.getParent(); !parent.equals(targetDir); parent = parent.getParent()) {
+         if (Files.exists(parent) && !Files.isDirectory(parent)) {
+            throw new BatchException("La ruta " + name + " usa un archivo existente como directorio");
+         }
+      }
+      Path staged = staging.resolve(relative);
+      try {
+         Files.createDirectories(staged.getParent());
+         copyWithLimits(name, content, staged);
+      } catch (FileAlreadyExistsException e) {
+         throw new BatchException("Ruta repetida o en conflicto dentro del lote: " + name);
+      }
+
+      // Los JSON se validan leyendo el archivo extraído como flujo
+      if (mimeType.equals("application/json")) {
+         try (Reader reader = Files.newBufferedReader(staged, StandardCharsets.UTF_8)) {
+            if (!validator.isValidJson(reader)) {
+               throw new BatchException("JSON mal formado en el lote: " + name);
+            }
+         }
+      }
+
+      // Si una ruta se repite en el lote, se conserva la última versión
+      if (!entries.contains(relative.toString())) {
+         entries.add(relative.toString());
+      }
+   }
+
+   // Copia una entrada contando los bytes descomprimidos, por archivo y por lote
+   private void copyWithLimits(String name, InputStream content, Path staged) throws BatchException, IOException {
+      byte[] buffer = new byte[8192];
+      long entryBytes = 0;
+      try (OutputStream output = Files.newOutputStream(staged, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+         int bytesRead;
+         while ((bytesRead = content.read(buffer)) != -1) {
+            entryBytes += bytesRead;
+            extractedBytes += bytesRead;
+            if (entryBytes > maxEntryBytes) {
+               throw new BatchException("El archivo " + name + " excede el maximo de " + maxEntryBytes + " bytes");
+            }
+            if (extractedBytes > maxBatchBytes) {
+               throw new BatchException("El lote excede el maximo de " + maxBatchBytes + " bytes descomprimidos");
+            }
+            output.write(buffer, 0, bytesRead);
+         }
+      }
+   }
+
+   // Mueve los archivos extraídos a su destino. Si algo falla se deshacen los movimientos ya hechos.
+   // Las copias de los archivos reemplazados van en un directorio aparte, fuera de los archivos del lote
+   private void commit(List<String> entries, Path staging, Path targetDir) throws IOException {
+      Path backups = Files.createTempDirectory(targetDir, ".batch-backup-");
+      try {
+         commit(entries, staging, targetDir, backups);
+      } finally {
+         deleteRecursively(backups);
+      }
+   }
+
+   private void commit(List<String> entries, Path staging, Path targetDir, Path backups) throws IOException {
+      List<String> committed = new ArrayList<>();
+
+      try {
+         for (String entry : entries) {
+            Path target = targetDir.resolve(entry);
+            Files.createDirectories(target.getParent());
+            if (Files.isDirectory(target)) {
+               throw new IOException("Ya existe un directorio con el nombre " + entry);
+            }
+            if (Files.exists(target)) {
+               Path backup = backups.resolve(entry);
+               Files.createDirectories(backup.getParent());
+               move(target, backup);
+            }
+            committed.add(entry);
+            move(staging.resolve(entry), target);
+         }
+      } catch (IOException e) {
+         for (int i = committed.size() - 1; i >= 0; i--) {
+            String entry = committed.get(i);
+            Path backup = backups.resolve(entry);
+            try {
+               if (Files.exists(backup)) {
+                  move(backup, targetDir.resolve(entry));
+               } else {
+                  Files.deleteIfExists(targetDir.resolve(entry));
+               }
+            } catch (IOException rollbackError) {
+               System.err.println("No se pudo restaurar " + entry + ": " + rollbackError.getMessage());
+            }
+         }
+         throw e;
+      }
+   }
+
+   // Elimina los directorios vacíos desde "directory" hasta "last" (inclusive)
+   private static void deleteEmptyDirectories(Path directory, Path last) {
+      for (Path current = directory; current != null && current.startsWith(last); current = current.getParent()) {
+         try {
+            Files.deleteIfExists(current);
+         } catch (IOException e) {
+            return;   // No está vacío: otra petición escribió en él
+         }
+      }
+   }
+
+   private static void move(Path source, Path target) throws IOException {
+      try {
+         Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+         Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   private static void deleteRecursively(Path directory) {
+      try (Stream<Path> paths = Files.walk(directory)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      } catch (IOException e) {
+         System.err.println("No se pudo eliminar el directorio temporal " + directory + ": " + e.getMessage());
+      }
+   }
+
+   private static boolean isZeroBlock(byte[] block) {
+      for (byte b : block) {
+         if (b != 0) return false;
+      }
+      return true;
+   }
+
+   private static String tarString(byte[] data, int offset, int length) {
+      int end = offset;
+      while (end < offset + length && data[end] != 0) end++;
+      return new String(data, offset, end - offset, StandardCharsets.UTF_8).trim();
+   }
+
+   private static long tarOctal(byte[] data, int offset, int length) throws BatchException {
+      String value = tarString(data, offset, length);
+      try {
+         return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+      } catch (NumberFormatException e) {
+         throw new BatchException("Cabecera tar inválida");
+      }
+   }
+
+   // Limita la lectura al tamaño de la entrada actual del tar, sin cerrar el flujo original
+   private static class BoundedInputStream extends FilterInputStream {
+      private long remaining;
+
+      BoundedInputStream(InputStream in, long size) {
+         super(in);
+         this.remaining = size;
+      }
+
+      @Override
+      public int read() throws IOException {
+         if (remaining <= 0) return -1;
+         int b = in.read();
+         if (b < 0) throw new EOFException();   // El tar terminó antes que la entrada
+         remaining--;
+         return b;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+         if (remaining <= 0) return -1;
+         int bytesRead = in.read(buffer, offset, (int) Math.min(length, remaining));
+         if (bytesRead < 0) throw new EOFException();
+         remaining -= bytesRead;
+         return bytesRead;
+      }
+
+      @Override
+      public void close() {
+         // El flujo del tar se sigue usando para las siguientes entradas
+      }
+   }
+}
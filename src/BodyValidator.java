@@ -0,0 +1,130 @@
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Validador de cuerpos JSON y XML. Recorre el contenido como flujo (sin construir el árbol o DOM completo)
+// y rechaza de forma temprana los cuerpos que exceden el tamaño o la profundidad de anidamiento permitidos.
+public class BodyValidator {
+
+   // Las fábricas de StAX no son seguras entre hilos, por eso se reutiliza una por hilo
+   private static final ThreadLocal<XMLInputFactory> XML_FACTORY = ThreadLocal.withInitial(() -> {
+      XMLInputFactory factory = XMLInputFactory.newFactory();
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+      return factory;
+   });
+
+   private final int maxDepth;
+   private final long maxBytes;
+
+   public BodyValidator(int maxDepth, long maxBytes) {
+      this.maxDepth = maxDepth;
+      this.maxBytes = maxBytes;
+   }
+
+   public BodyValidator(ServerConfig config) {
+      this(config.getInt("validation.maxDepth", 128), config.getLong("validation.maxBytes", 16L * 1024 * 1024));
+   }
+
+   public long getMaxBytes() {
+      return maxBytes;
+   }
+
+   public boolean isValidJson(byte[] body) {
+      if (body.length > maxBytes) return false;
+      return isValidJson(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+   }
+
+   public boolean isValidJson(String body) {
+      if (body.length() > maxBytes) return false;
+      return isValidJson(new StringReader(body));
+   }
+
+   // Valida un JSON leído de un flujo. El flujo no se cierra
+   public boolean isValidJson(Reader body) {
+      JsonReader reader = new JsonReader(body);
+      // Misma tolerancia que JsonParser.parseString, usado anteriormente para validar
+      reader.setStrictness(Strictness.LENIENT);
+
+      try {
+         // Un documento vacío se consideraba válido (JsonNull)
+         if (reader.peek() == JsonToken.END_DOCUMENT) return true;
+      } catch (EOFException e) {
+         return true;
+      } catch (Exception e) {
+         return false;
+      }
+
+      try {
+         int depth = 0;
+         do {
+            switch (reader.peek()) {
+               case BEGIN_ARRAY:
+                  reader.beginArray();
+                  if (++depth > maxDepth) return false;
+                  break;
+               case END_ARRAY:
+                  reader.endArray();
+                  depth--;
+                  break;
+               case BEGIN_OBJECT:
+                  reader.beginObject();
+                  if (++depth > maxDepth) return false;
+                  break;
+               case END_OBJECT:
+                  reader.endObject();
+                  depth--;
+                  break;
+               default:
+                  // Nombres y valores primitivos se saltan sin construir cadenas
+                  reader.skipValue();
+                  break;
+            }
+         } while (depth > 0);
+
+         // Solo se admite un valor por documento
+         return reader.peek() == JsonToken.END_DOCUMENT;
+      } catch (Exception e) {
+         return false;
+      }
+   }
+
+   public boolean isValidXml(String body) {
+      if (body.length() > maxBytes) return false;
+      try {
+         return isValidXml(XML_FACTORY.get().createXMLStreamReader(new StringReader(body)));
+      } catch (Exception e) {
+         return false;
+      }
+   }
+
+   private boolean isValidXml(XMLStreamReader reader) {
+      try {
+         int depth = 0;
+         boolean hasRoot = false;
+         while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+               hasRoot = true;
+               if (++depth > maxDepth) return false;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+               depth--;
+            }
+         }
+         return hasRoot;
+      } catch (Exception e) {
+         return false;
+      } finally {
+         try {
+            reader.close();
+         } catch (Exception e) {
+            // No hay recursos externos que liberar
+         }
+      }
+   }
+}
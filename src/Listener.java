@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Capa de escucha del servidor. Acepta conexiones con varios hilos; si el sistema soporta SO_REUSEPORT
+// cada hilo tiene su propio socket de escucha en el mismo puerto y el kernel reparte las conexiones entre ellos.
+public class Listener {
+
+   private static final long ACCEPT_ERROR_PAUSE_MS = 100;   // Pausa tras un error al aceptar (p. ej. sin descriptores)
+
+   private final int port;
+   private final int backlog;
+   private final int acceptorCount;
+   private final boolean reusePort;
+   private final boolean tcpNoDelay;
+   private final int sendBufferSize;      // 0: valor por defecto del sistema
+   private final int receiveBufferSize;   // 0: valor por defecto del sistema
+   private final Consumer<Socket> connectionHandler;
+
+   private final List<ServerSocketChannel> channels = new ArrayList<>();
+   private final List<Thread> acceptors = new ArrayList<>();
+
+   public Listener(ServerConfig config, int defaultPort, Consumer<Socket> connectionHandler) {
+      this.port = config.getInt("server.port", defaultPort);
+      this.backlog = config.getInt("server.backlog", 128);
+      this.acceptorCount = Math.max(1, config.getInt("server.acceptors", Runtime.getRuntime().availableProcessors()));
+      this.reusePort = config.getBoolean("server.reusePort", false);
+      this.tcpNoDelay = config.getBoolean("socket.tcpNoDelay", true);
+      this.sendBufferSize = config.getInt("socket.sendBufferSize", 0);
+      this.receiveBufferSize = config.getInt("socket.receiveBufferSize", 0);
+      this.connectionHandler = connectionHandler;
+   }
+
+   public int getPort() {
+      return port;
+   }
+
+   // Abre los sockets de escucha y arranca los hilos aceptadores
+   public void start() throws IOException {
+      boolean useReusePort = reusePort && acceptorCount > 1 && supportsReusePort();
+
+      if (useReusePort) {
+         // Con SO_REUSEPORT el kernel permitiría que otra instancia ya iniciada comparta el puerto y se repartiría
+         // el tráfico entre ambas; se comprueba primero que el puerto esté libre
+         ensurePortAvailable();
+
+         // Un socket de escucha por hilo, todos en el mismo puerto
+         for (int i = 0; i < acceptorCount; i++) {
+            ServerSocketChannel channel = openChannel(true);
+            channels.add(channel);
+            acceptors.add(new Thread(() -> acceptLoop(channel), "acceptor-" + i));
+         }
+      } else {
+         // Un único socket de escucha compartido por todos los hilos
+         ServerSocketChannel channel = openChannel(false);
+         channels.add(channel);
+         for (int i = 0; i < acceptorCount; i++) {
+            acceptors.add(new Thread(() -> acceptLoop(channel), "acceptor-" + i));
+         }
+      }
+
+      for (Thread acceptor : acceptors) {
+         acceptor.start();
+      }
+
+      System.out.println("Escuchando con " + acceptorCount + " hilo(s) aceptador(es)" + (useReusePort ? " (SO_REUSEPORT)" : "") + ", backlog " + backlog);
+   }
+
+   private static boolean supportsReusePort() throws IOException {
+      try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+         return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+      }
+   }
+
+   // Lanza BindException ("Address already in use") si otro proceso ya escucha en el puerto
+   private void ensurePortAvailable() throws IOException {
+      try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+         probe.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+         probe.bind(new InetSocketAddress(port));
+      }
+   }
+
+   private ServerSocketChannel openChannel(boolean withReusePort) throws IOException {
+      ServerSocketChannel channel = ServerSocketChannel.open();
+      channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      if (withReusePort) {
+         channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+      }
+      // El buffer de recepción debe fijarse antes del bind para que lo hereden las conexiones aceptadas
+      if (receiveBufferSize > 0) {
+         channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+      }
+      channel.bind(new InetSocketAddress(port), backlog);
+      return channel;
+   }
+
+   private void acceptLoop(ServerSocketChannel channel) {
+      while (channel.isOpen()) {
+         SocketChannel client;
+         try {
+            client = channel.accept();
+         } catch (ClosedChannelException e) {
+            break;   // El listener se cerró (incluye AsynchronousCloseException)
+         } catch (IOException e) {
+            // Sin descriptores disponibles (EMFILE) u otro error del sistema: se espera un poco antes de reintentar
+            System.err.println("Error al aceptar conexión: " + e.getMessage());
+            pause();
+            continue;
+         }
+
+         Socket socket = client.socket();
+         try {
+            configure(socket);
+         } catch (IOException e) {
+            // El cliente cerró la conexión antes de configurarla; se cierra para no perder el descriptor
+            System.err.println("Error al configurar la conexión: " + e.getMessage());
+            try {
+               client.close();
+            } catch (IOException closeError) {
+               System.err.println("No se pudo cerrar la conexión: " + closeError.getMessage());
+            }
+            continue;
+         }
+
+         System.out.println("Conexión aceptada desde \u001B[35m" + socket.getInetAddress() + "\u001B[0m");
+         connectionHandler.accept(socket);
+      }
+   }
+
+   private static void pause() {
+      try {
+         Thread.sleep(ACCEPT_ERROR_PAUSE_MS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void configure(Socket socket) throws IOException {
+      // Desactivar Nagle para no retrasar respuestas pequeñas
+      socket.setTcpNoDelay(tcpNoDelay);
+      if (sendBufferSize > 0) {
+         socket.setSendBufferSize(sendBufferSize);
+      }
+      if (receiveBufferSize > 0) {
+         socket.setReceiveBufferSize(receiveBufferSize);
+      }
+   }
+
+   // Espera a que terminen los hilos aceptadores
+   public void join() throws InterruptedException {
+      for (Thread acceptor : acceptors) {
+         acceptor.join();
+      }
+   }
+
+   // Deja de aceptar conexiones nuevas
+   public void close() {
+      for (ServerSocketChannel channel : channels) {
+         try {
+            channel.close();
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      }
+   }
+}
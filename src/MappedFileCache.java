@@ -0,0 +1,215 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cache de archivos grandes mapeados en memoria (FileChannel.map). Un mismo MappedByteBuffer se comparte entre
+// todas las conexiones que descargan el archivo, así se sirve desde el page cache sin copias por petición.
+// Cada mapeo lleva un contador de referencias: el cache tiene una y cada descarga en curso otra; cuando el archivo
+// se reemplaza (PUT) o se elimina (DELETE) el cache suelta la suya y el mapeo se libera al terminar la última descarga.
+public class MappedFileCache {
+
+   // Para liberar un mapeo sin esperar al recolector de basura (disponible en el módulo jdk.unsupported)
+   private static final Object UNSAFE;
+   private static final Method INVOKE_CLEANER;
+
+   static {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         Field field = unsafeClass.getDeclaredField("theUnsafe");
+         field.setAccessible(true);
+         unsafe = field.get(null);
+         invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (Exception e) {
+         System.out.println("No se pueden liberar mapeos explícitamente, se liberarán con el recolector de basura");
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+   }
+
+   private final Map<String, MappedFile> files = new ConcurrentHashMap<>();
+
+   private volatile boolean enabled;
+   private volatile long minFileSize;
+   private volatile int maxEntries;
+
+   public MappedFileCache(ServerConfig config) {
+      reconfigure(config);
+   }
+
+   public void reconfigure(ServerConfig config) {
+      this.enabled = config.getBoolean("mmap.enabled", false);
+      this.minFileSize = config.getLong("mmap.minFileSize", 1024 * 1024);
+      this.maxEntries = Math.max(1, config.getInt("mmap.maxEntries", 64));
+
+      if (!enabled) {
+         clear();
+      }
+   }
+
+   // Obtiene el mapeo del archivo, creándolo si hace falta. Regresa null si el archivo no debe servirse mapeado.
+   // Quien lo obtiene debe llamar a release() al terminar de enviarlo
+   public MappedFile acquire(File file) {
+      if (!enabled || !file.isFile() || file.length() < minFileSize || file.length() > Integer.MAX_VALUE) {
+         return null;
+      }
+
+      String key = keyOf(file.getPath());
+      while (true) {
+         MappedFile mapped = files.get(key);
+
+         if (mapped != null && !mapped.isCurrent(file)) {
+            // El archivo se modificó por fuera del servidor desde que se mapeó
+            invalidate(key, mapped);
+            mapped = null;
+         }
+
+         if (mapped == null) {
+            try {
+               mapped = files.computeIfAbsent(key, k -> map(file));
+            } catch (UncheckedMappingException e) {
+               System.err.println("No se pudo mapear " + file.getName() + ": " + e.getMessage());
+               return null;
+            }
+            evictIfNeeded();
+         }
+
+         // Si el mapeo se invalidó justo ahora, se intenta de nuevo
+         if (mapped.retain()) {
+            mapped.lastAccess = System.nanoTime();
+            return mapped;
+         }
+      }
+   }
+
+   // Se llama cuando un archivo se reemplaza o elimina
+   public void invalidate(String path) {
+      String key = keyOf(path);
+      MappedFile mapped = files.get(key);
+      if (mapped != null) {
+         invalidate(key, mapped);
+      }
+   }
+
+   private void invalidate(String key, MappedFile mapped) {
+      if (files.remove(key, mapped)) {
+         mapped.release();   // Referencia del cache
+      }
+   }
+
+   public void clear() {
+      for (Map.Entry<String, MappedFile> entry : files.entrySet()) {
+         invalidate(entry.getKey(), entry.getValue());
+      }
+   }
+
+   // Mapea un archivo y carga sus páginas en memoria (sin retener referencia). Regresa false si no se sirve mapeado
+   public boolean preload(File file) {
+      MappedFile mapped = acquire(file);
+      if (mapped == null) {
+         return false;
+      }
+      try {
+         mapped.buffer.load();
+      } finally {
+         mapped.release();
+      }
+      return true;
+   }
+
+   private void evictIfNeeded() {
+      while (files.size() > maxEntries) {
+         Map.Entry<String, MappedFile> oldest = null;
+         for (Map.Entry<String, MappedFile> entry : files.entrySet()) {
+            if (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess) {
+               oldest = entry;
+            }
+         }
+         if (oldest == null) {
+            return;
+         }
+         invalidate(oldest.getKey(), oldest.getValue());
+      }
+   }
+
+   private static String keyOf(String path) {
+      return Path.of(path).toAbsolutePath().normalize().toString();
+   }
+
+   private static MappedFile map(File file) {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         long lastModified = file.lastModified();
+         MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         System.out.println("Archivo mapeado en memoria: " + file.getName() + " (" + buffer.capacity() + " bytes)");
+         return new MappedFile(buffer, lastModified);
+      } catch (IOException e) {
+         throw new UncheckedMappingException(e);
+      }
+   }
+
+   private static class UncheckedMappingException extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      UncheckedMappingException(IOException cause) {
+         super(cause.getMessage(), cause);
+      }
+   }
+
+   // Archivo mapeado compartido entre conexiones
+   public static class MappedFile {
+      private final MappedByteBuffer buffer;
+      private final long lastModified;
+      private final AtomicInteger references = new AtomicInteger(1);   // La referencia inicial es la del cache
+      private volatile long lastAccess = System.nanoTime();
+
+      MappedFile(MappedByteBuffer buffer, long lastModified) {
+         this.buffer = buffer;
+         this.lastModified = lastModified;
+      }
+
+      public long length() {
+         return buffer.capacity();
+      }
+
+      // Vista independiente (posición propia) del contenido, para escribirla al socket sin copiarla
+      public ByteBuffer slice() {
+         return buffer.duplicate();
+      }
+
+      boolean isCurrent(File file) {
+         return file.lastModified() == lastModified && file.length() == buffer.capacity();
+      }
+
+      boolean retain() {
+         while (true) {
+            int count = references.get();
+            if (count == 0) {
+               return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+               return true;
+            }
+         }
+      }
+
+      public void release() {
+         if (references.decrementAndGet() == 0 && INVOKE_CLEANER != null) {
+            try {
+               INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (Exception e) {
+               // Se libera con el recolector de basura
+            }
+         }
+      }
+   }
+}
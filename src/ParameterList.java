@@ -0,0 +1,115 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Lista de parámetros de una petición (query string o formulario x-www-form-urlencoded).
+// Se guarda en arreglos paralelos de nombres y valores, en el orden en que llegaron, y admite nombres repetidos.
+public class ParameterList {
+
+   private String[] names;
+   private String[] values;
+   private int size = 0;
+
+   public ParameterList() {
+      this(8);
+   }
+
+   public ParameterList(int initialCapacity) {
+      names = new String[Math.max(1, initialCapacity)];
+      values = new String[names.length];
+   }
+
+   // Analiza una cadena "nombre=valor&nombre2=valor2" todavía codificada (sin URLDecoder)
+   public static ParameterList parse(String encoded, int maxParameters, int maxBytes) {
+      byte[] data = encoded.getBytes(StandardCharsets.UTF_8);
+      return parse(data, 0, data.length, maxParameters, maxBytes);
+   }
+
+   // Analiza los bytes en una sola pasada. Cada nombre y valor se decodifica por separado (%XX y '+'),
+   // así un '&' o '=' codificado dentro de un valor no rompe los pares.
+   // Lanza IllegalArgumentException si se exceden los límites de cantidad de parámetros o de tamaño
+   public static ParameterList parse(byte[] data, int offset, int length, int maxParameters, int maxBytes) {
+      if (length > maxBytes) {
+         throw new IllegalArgumentException("Los parametros exceden el tamano maximo de " + maxBytes + " bytes");
+      }
+
+      ParameterList parameters = new ParameterList();
+      byte[] decoded = new byte[length];   // Buffer compartido para decodificar cada componente
+      int end = offset + length;
+      int pairStart = offset;
+      int separator = -1;   // Posición del primer '=' del par actual
+
+      for (int i = offset; i <= end; i++) {
+         byte b = i < end ? data[i] : (byte) '&';
+
+         if (b == '=' && separator < 0) {
+            separator = i;
+         } else if (b == '&') {
+            if (i > pairStart) {
+               if (parameters.size >= maxParameters) {
+                  throw new IllegalArgumentException("Se excede el maximo de " + maxParameters + " parametros");
+               }
+               int nameEnd = separator < 0 ? i : separator;
+               String name = decode(data, pairStart, nameEnd, decoded);
+               String value = separator < 0 ? "" : decode(data, separator + 1, i, decoded);
+               parameters.add(name, value);
+            }
+            pairStart = i + 1;
+            separator = -1;
+         }
+      }
+
+      return parameters;
+   }
+
+   // Decodifica data[from, to) en UTF-8. Las secuencias % inválidas se dejan tal cual
+   private static String decode(byte[] data, int from, int to, byte[] decoded) {
+      int length = 0;
+      boolean plain = true;
+
+      for (int i = from; i < to; i++) {
+         byte b = data[i];
+         if (b == '+') {
+            decoded[length++] = ' ';
+            plain = false;
+         } else if (b == '%' && i + 2 < to && hexValue(data[i + 1]) >= 0 && hexValue(data[i + 2]) >= 0) {
+            decoded[length++] = (byte) ((hexValue(data[i + 1]) << 4) | hexValue(data[i + 2]));
+            i += 2;
+            plain = false;
+         } else {
+            decoded[length++] = b;
+         }
+      }
+
+      // Si no hubo nada que decodificar se construye la cadena directamente de los datos originales
+      return plain ? new String(data, from, to - from, StandardCharsets.UTF_8) : new String(decoded, 0, length, StandardCharsets.UTF_8);
+   }
+
+   private static int hexValue(byte b) {
+      if (b >= '0' && b <= '9') return b - '0';
+      if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+      if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+      return -1;
+   }
+
+   public void add(String name, String value) {
+      if (size == names.length) {
+         names = Arrays.copyOf(names, size * 2);
+         values = Arrays.copyOf(values, size * 2);
+      }
+      names[size] = name;
+      values[size] = value;
+      size++;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public String getName(int index) {
+      return names[index];
+   }
+
+   public String getValue(int index) {
+      return values[index];
+   }
+}
@@ -0,0 +1,260 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Reproduce una captura de peticiones (generada con capture.enabled=true) contra uno o dos servidores y muestra
+// la latencia por ruta (método + recurso sin parámetros). Con dos servidores, por ejemplo dos compilaciones distintas,
+// muestra también la diferencia entre ambos.
+// Las respuestas cuyo código de estado no coincide con el capturado no cuentan en las latencias y se reportan aparte.
+//
+// Uso: java ReplayTool <captura.jsonl> <host:puerto> [host:puerto] [--speed N] [--methods GET,HEAD] [--concurrency N]
+//   --speed N        reproduce N veces más rápido que lo capturado (0 = sin esperas)
+//   --methods        solo reproduce esos métodos (útil para no repetir PUT/DELETE contra un servidor real)
+//   --concurrency N  número máximo de peticiones simultáneas
+public class ReplayTool {
+
+   private static class RecordedRequest {
+      long receivedAt;
+      String method;
+      String resource;   // Recurso tal como llegó en la petición original (sin decodificar)
+      int status;
+      List<String> headers = new ArrayList<>();
+      byte[] body = new byte[0];
+
+      String route() {
+         int query = resource.indexOf('?');
+         return method + " " + (query >= 0 ? resource.substring(0, query) : resource);
+      }
+   }
+
+   private static class Result {
+      final String route;
+      final long latencyMicros;
+      final int expectedStatus;
+      final int status;
+
+      Result(String route, long latencyMicros, int expectedStatus, int status) {
+         this.route = route;
+         this.latencyMicros = latencyMicros;
+         this.expectedStatus = expectedStatus;
+         this.status = status;
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      List<String> positional = new ArrayList<>();
+      double speed = 1.0;
+      Set<String> methods = null;
+      int concurrency = 16;
+
+      for (int i = 0; i < args.length; i++) {
+         switch (args[i]) {
+            case "--speed":
+               speed = Double.parseDouble(args[++i]);
+               break;
+            case "--methods":
+               methods = new HashSet<>(Arrays.asList(args[++i].toUpperCase().split(",")));
+               break;
+            case "--concurrency":
+               concurrency = Integer.parseInt(args[++i]);
+               break;
+            default:
+               positional.add(args[i]);
+         }
+      }
+
+      if (positional.size() < 2 || positional.size() > 3) {
+         System.err.println("Uso: java ReplayTool <captura.jsonl> <host:puerto> [host:puerto] [--speed N] [--methods GET,HEAD] [--concurrency N]");
+         System.exit(1);
+      }
+
+      List<RecordedRequest> requests = load(Path.of(positional.get(0)), methods);
+      System.out.println("Peticiones a reproducir: " + requests.size());
+
+      Map<String, List<Long>> baseline = replay(requests, positional.get(1), speed, concurrency);
+      printReport(positional.get(1), baseline);
+
+      if (positional.size() == 3) {
+         Map<String, List<Long>> candidate = replay(requests, positional.get(2), speed, concurrency);
+         printReport(positional.get(2), candidate);
+         printComparison(positional.get(1), baseline, positional.get(2), candidate);
+      }
+   }
+
+   private static List<RecordedRequest> load(Path captureFile, Set<String> methods) throws IOException {
+      List<RecordedRequest> requests = new ArrayList<>();
+      Path base = captureFile.toAbsolutePath().getParent();
+
+      try (BufferedReader reader = Files.newBufferedReader(captureFile, StandardCharsets.UTF_8)) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+
+            RecordedRequest request = new RecordedRequest();
+            request.receivedAt = json.get("receivedAt").getAsLong();
+            request.method = json.get("method").getAsString();
+            request.resource = json.get("resource").getAsString();
+            request.status = json.get("status").getAsInt();
+            if (methods != null && !methods.contains(request.method)) continue;
+
+            JsonArray headers = json.getAsJsonArray("headers");
+            for (JsonElement header : headers) {
+               request.headers.add(header.getAsString());
+            }
+            if (json.has("bodyRef")) {
+               request.body = Files.readAllBytes(base.resolve(json.get("bodyRef").getAsString()));
+            } else if (json.get("bodySize").getAsLong() > 0) {
+               System.err.println("Cuerpo no capturado (demasiado grande), se reproduce vacío: " + request.route());
+            }
+            requests.add(request);
+         }
+      }
+
+      requests.sort(Comparator.comparingLong(request -> request.receivedAt));
+      return requests;
+   }
+
+   // Envía las peticiones respetando (a escala) el tiempo entre ellas. Regresa las latencias por ruta
+   private static Map<String, List<Long>> replay(List<RecordedRequest> requests, String target, double speed, int concurrency) throws InterruptedException {
+      String[] hostAndPort = target.split(":");
+      InetSocketAddress address = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+      ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+      List<Future<Result>> futures = new ArrayList<>();
+
+      System.out.println("\nReproduciendo contra " + target + "...");
+      long start = System.nanoTime();
+      long firstReceivedAt = requests.isEmpty() ? 0 : requests.get(0).receivedAt;
+
+      for (RecordedRequest request : requests) {
+         if (speed > 0) {
+            long dueNanos = (long) ((request.receivedAt - firstReceivedAt) * 1_000_000L / speed);
+            long waitNanos = dueNanos - (System.nanoTime() - start);
+            if (waitNanos > 0) {
+               TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+         }
+         futures.add(pool.submit(() -> send(address, request)));
+      }
+
+      Map<String, List<Long>> latencies = new TreeMap<>();
+      Map<String, Integer> mismatches = new TreeMap<>();
+      int errors = 0;
+      for (Future<Result> future : futures) {
+         try {
+            Result result = future.get();
+            if (result.status == result.expectedStatus) {
+               latencies.computeIfAbsent(result.route, route -> new ArrayList<>()).add(result.latencyMicros);
+            } else {
+               // Una respuesta distinta (por ejemplo un 400 en lugar del archivo) no es comparable en tiempo
+               mismatches.merge(result.route + " (" + result.expectedStatus + " -> " + result.status + ")", 1, Integer::sum);
+            }
+         } catch (ExecutionException e) {
+            errors++;
+         }
+      }
+      pool.shutdown();
+
+      if (errors > 0) {
+         System.err.println("Peticiones con error de conexión: " + errors);
+      }
+      if (!mismatches.isEmpty()) {
+         System.err.println("Respuestas con estado distinto al capturado (excluidas de las latencias):");
+         for (Map.Entry<String, Integer> entry : mismatches.entrySet()) {
+            System.err.println("  " + entry.getKey() + ": " + entry.getValue());
+         }
+      }
+      return latencies;
+   }
+
+   private static Result send(InetSocketAddress address, RecordedRequest request) throws IOException {
+      ByteArrayOutputStream raw = new ByteArrayOutputStream();
+      StringBuilder head = new StringBuilder();
+      head.append(request.method).append(' ').append(request.resource).append(" HTTP/1.1\r\n");
+      for (String header : request.headers) {
+         if (!header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+            head.append(header).append("\r\n");
+         }
+      }
+      if (request.body.length > 0) {
+         head.append("Content-Length: ").append(request.body.length).append("\r\n");
+      }
+      head.append("\r\n");
+      raw.write(head.toString().getBytes(StandardCharsets.UTF_8));
+      raw.write(request.body);
+
+      long start = System.nanoTime();
+      try (Socket socket = new Socket()) {
+         socket.connect(address, 5000);
+         socket.setSoTimeout(60000);
+         socket.getOutputStream().write(raw.toByteArray());
+         // Cerrar la salida le indica al servidor que la petición terminó (no espera el tiempo de lectura)
+         socket.shutdownOutput();
+
+         // La latencia incluye la respuesta completa
+         InputStream input = socket.getInputStream();
+         int status = readStatus(input);
+         input.transferTo(OutputStream.nullOutputStream());
+         return new Result(request.route(), (System.nanoTime() - start) / 1000, request.status, status);
+      }
+   }
+
+   // Lee la línea de estado ("HTTP/1.1 200 OK") y regresa el código, o 0 si la respuesta está vacía o no es HTTP
+   private static int readStatus(InputStream input) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = input.read()) != -1 && b != '\n') {
+         line.append((char) b);
+      }
+      String[] parts = line.toString().split(" ");
+      try {
+         return parts.length >= 2 ? Integer.parseInt(parts[1]) : 0;
+      } catch (NumberFormatException e) {
+         return 0;
+      }
+   }
+
+   private static long percentile(List<Long> sorted, double percentile) {
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+      return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+   }
+
+   private static void printReport(String target, Map<String, List<Long>> latencies) {
+      System.out.println("\nLatencias en " + target + " (ms)");
+      System.out.printf("%-40s %8s %10s %10s %10s%n", "Ruta", "N", "p50", "p95", "max");
+      for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+         List<Long> sorted = new ArrayList<>(entry.getValue());
+         Collections.sort(sorted);
+         System.out.printf("%-40s %8d %10.2f %10.2f %10.2f%n", entry.getKey(), sorted.size(),
+                 percentile(sorted, 50) / 1000.0, percentile(sorted, 95) / 1000.0, sorted.get(sorted.size() - 1) / 1000.0);
+      }
+   }
+
+   private static void printComparison(String baselineName, Map<String, List<Long>> baseline, String candidateName, Map<String, List<Long>> candidate) {
+      System.out.println("\nDiferencia " + candidateName + " vs " + baselineName + " (ms, negativo = más rápido)");
+      System.out.printf("%-40s %12s %9s %12s %9s%n", "Ruta", "p50", "%", "p95", "%");
+      for (Map.Entry<String, List<Long>> entry : baseline.entrySet()) {
+         List<Long> other = candidate.get(entry.getKey());
+         if (other == null) continue;
+
+         List<Long> a = new ArrayList<>(entry.getValue());
+         List<Long> b = new ArrayList<>(other);
+         Collections.sort(a);
+         Collections.sort(b);
+         long p50a = percentile(a, 50), p50b = percentile(b, 50);
+         long p95a = percentile(a, 95), p95b = percentile(b, 95);
+         System.out.printf("%-40s %+12.2f %+8.1f%% %+12.2f %+8.1f%%%n", entry.getKey(),
+                 (p50b - p50a) / 1000.0, p50a == 0 ? 0.0 : 100.0 * (p50b - p50a) / p50a,
+                 (p95b - p95a) / 1000.0, p95a == 0 ? 0.0 : 100.0 * (p95b - p95a) / p95a);
+      }
+   }
+}
@@ -0,0 +1,175 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Captura de peticiones para reproducirlas después con ReplayTool. Cada petición muestreada se agrega como una línea
+// JSON (método, recurso, cabeceras, referencia al cuerpo, tiempos y estado) a un archivo .jsonl.
+// La escritura la hace un hilo en segundo plano para no retrasar las respuestas; si la cola se llena se descartan capturas.
+// Los cuerpos se guardan aparte, nombrados por su hash, así los cuerpos repetidos se guardan una sola vez.
+// Por defecto la captura va al directorio temporal del sistema, fuera del directorio servido.
+public class RequestRecorder {
+
+   private static class CapturedRequest {
+      long receivedAt;
+      String method;
+      String resource;
+      String[] headers;
+      byte[] body;
+      long durationMicros;
+      int status;
+   }
+
+   private final BlockingQueue<CapturedRequest> queue = new ArrayBlockingQueue<>(10000);
+   private final AtomicLong dropped = new AtomicLong();
+   private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+   private Thread writer;
+
+   private volatile boolean enabled;
+   private volatile double sampleRate;
+   private volatile int maxBodyBytes;
+   private volatile Path captureFile;
+   private volatile Path bodyDirectory;
+
+   public RequestRecorder(ServerConfig config) {
+      reconfigure(config);
+   }
+
+   public synchronized void reconfigure(ServerConfig config) {
+      this.enabled = config.getBoolean("capture.enabled", false);
+      this.sampleRate = config.getDouble("capture.sampleRate", 1.0);
+      this.maxBodyBytes = config.getInt("capture.maxBodyBytes", 1024 * 1024);
+      Path defaultDirectory = Path.of(System.getProperty("java.io.tmpdir"), "webserver-capture");
+      this.captureFile = Path.of(config.getString("capture.file", defaultDirectory.resolve("requests.jsonl").toString()));
+      this.bodyDirectory = Path.of(config.getString("capture.bodyDirectory", captureFile.toAbsolutePath().resolveSibling("bodies").toString()));
+
+      if (enabled && writer == null) {
+         writer = new Thread(this::writeLoop, "request-recorder");
+         writer.setDaemon(true);
+         writer.start();
+         System.out.println("Capturando peticiones en " + captureFile + " (muestreo " + sampleRate + ")");
+      }
+   }
+
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   // Archivo y directorio de captura y directorio de cuerpos (no deben servirse por HTTP). El directorio del archivo
+   // de captura solo se incluye si no contiene al directorio servido (por ejemplo capture.file=requests.jsonl)
+   public List<Path> getCapturePaths() {
+      Path file = captureFile.toAbsolutePath().normalize();
+      Path directory = file.getParent();
+      Path served = Path.of("").toAbsolutePath();
+      if (directory == null || served.startsWith(directory)) {
+         return List.of(file, bodyDirectory.toAbsolutePath().normalize());
+      }
+      return List.of(directory, bodyDirectory.toAbsolutePath().normalize());
+   }
+
+   // Registra una petición ya atendida. "target" es el recurso tal como llegó en la línea de la petición (sin decodificar)
+   // y requestParts son las líneas de la petición (línea inicial y cabeceras)
+   public void record(String method, String target, String[] requestParts, byte[] body, long receivedAt, long durationNanos, int status) {
+      if (!enabled || (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+         return;
+      }
+
+      List<String> headers = new ArrayList<>();
+      for (int i = 1; i < requestParts.length && !requestParts[i].isEmpty(); i++) {
+         headers.add(requestParts[i]);
+      }
+
+      CapturedRequest captured = new CapturedRequest();
+      captured.receivedAt = receivedAt;
+      captured.method = method;
+      captured.resource = target;
+      captured.headers = headers.toArray(new String[0]);
+      captured.body = body;
+      captured.durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+      captured.status = status;
+
+      if (!queue.offer(captured)) {
+         dropped.incrementAndGet();
+      }
+   }
+
+   private void writeLoop() {
+      List<CapturedRequest> batch = new ArrayList<>();
+      while (true) {
+         try {
+            batch.add(queue.take());
+            queue.drainTo(batch, 255);
+            writeBatch(batch);
+         } catch (InterruptedException e) {
+            return;
+         } catch (IOException e) {
+            System.err.println("Error al escribir la captura de peticiones: " + e.getMessage());
+         } finally {
+            batch.clear();
+         }
+      }
+   }
+
+   private void writeBatch(List<CapturedRequest> batch) throws IOException {
+      Path file = captureFile;
+      if (file.getParent() != null) {
+         Files.createDirectories(file.getParent());
+      }
+
+      try (BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file.toFile(), true), StandardCharsets.UTF_8))) {
+         for (CapturedRequest captured : batch) {
+            JsonObject line = new JsonObject();
+            line.addProperty("receivedAt", captured.receivedAt);
+            line.addProperty("method", captured.method);
+            line.addProperty("resource", captured.resource);
+
+            JsonArray headers = new JsonArray();
+            for (String header : captured.headers) {
+               headers.add(header);
+            }
+            line.add("headers", headers);
+
+            line.addProperty("bodySize", captured.body.length);
+            if (captured.body.length > 0 && captured.body.length <= maxBodyBytes) {
+               line.addProperty("bodyRef", saveBody(captured.body));
+            }
+            line.addProperty("durationMicros", captured.durationMicros);
+            line.addProperty("status", captured.status);
+
+            output.write(gson.toJson(line));
+            output.write('\n');
+         }
+      }
+
+      long droppedCount = dropped.getAndSet(0);
+      if (droppedCount > 0) {
+         System.err.println("Se descartaron " + droppedCount + " capturas por cola llena");
+      }
+   }
+
+   // Guarda el cuerpo (si no existe ya) y regresa su nombre de archivo relativo al archivo de captura
+   private String saveBody(byte[] body) throws IOException {
+      Path directory = bodyDirectory;
+      Files.createDirectories(directory);
+
+      String name = Long.toHexString(ResponseCache.xxHash64(body, 0, body.length, 0)) + "-" + body.length + ".bin";
+      Path bodyFile = directory.resolve(name);
+      if (!Files.exists(bodyFile)) {
+         Files.write(bodyFile, body);
+      }
+
+      Path base = captureFile.toAbsolutePath().getParent();
+      return base.relativize(bodyFile.toAbsolutePath()).toString();
+   }
+}
@@ -0,0 +1,201 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Cache de respuestas ya codificadas (cabecera y cuerpo en bytes) para peticiones idempotentes y sin efectos secundarios,
+// como el eco de parámetros de GET/POST, la validación de JSON/XML/HTML o los listados de directorios.
+// La clave es método + recurso + Content-Type + hash xxHash64 del cuerpo; las entradas caducan por tiempo y
+// se desalojan por tamaño (LRU). Los listados de directorios se invalidan cuando cambia un archivo del directorio.
+public class ResponseCache {
+
+   private static class Entry {
+      final byte[] response;
+      final long expiresAt;
+      final Path directory;   // Directorio listado, o null si la respuesta no depende de archivos
+
+      Entry(byte[] response, long expiresAt, Path directory) {
+         this.response = response;
+         this.expiresAt = expiresAt;
+         this.directory = directory;
+      }
+   }
+
+   private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+   private long totalBytes = 0;
+
+   private volatile boolean enabled;
+   private volatile long maxBytes;
+   private volatile long maxEntryBytes;
+   private volatile long ttlNanos;
+   private volatile boolean utf8Responses;
+
+   public ResponseCache(ServerConfig config) {
+      reconfigure(config);
+   }
+
+   public void reconfigure(ServerConfig config) {
+      this.enabled = config.getBoolean("cache.enabled", false);
+      this.maxBytes = config.getLong("cache.maxBytes", 16L * 1024 * 1024);
+      this.maxEntryBytes = config.getLong("cache.maxEntryBytes", 256 * 1024);
+      this.ttlNanos = config.getLong("cache.ttlMs", 5000) * 1_000_000L;
+      // Las respuestas guardadas dependen de la codificación del texto (response.utf8)
+      boolean utf8 = config.getBoolean("response.utf8", false);
+      boolean encodingChanged = utf8 != utf8Responses;
+      this.utf8Responses = utf8;
+
+      synchronized (this) {
+         if (!enabled || encodingChanged) {
+            entries.clear();
+            totalBytes = 0;
+         }
+         evictIfNeeded();
+      }
+   }
+
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   // Clave de la petición: codificación de las respuestas, método, recurso, Content-Type y hash + longitud del cuerpo.
+   // Con la codificación en la clave, una respuesta generada durante una recarga de response.utf8 no se sirve en el otro modo
+   public static String keyOf(boolean utf8, String method, String resource, String contentType, byte[] body) {
+      return (utf8 ? "utf8 " : "ascii ") + method + " " + resource + " " + contentType + " " + Long.toHexString(xxHash64(body, 0, body.length, 0)) + ":" + body.length;
+   }
+
+   public synchronized byte[] get(String key) {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+         return null;
+      }
+      if (System.nanoTime() - entry.expiresAt > 0) {
+         remove(key);
+         return null;
+      }
+      return entry.response;
+   }
+
+   // Guarda una respuesta. "directory" es el directorio del que depende (listados), o null
+   public synchronized void put(String key, byte[] response, Path directory) {
+      if (!enabled || response.length > maxEntryBytes) {
+         return;
+      }
+      remove(key);
+      entries.put(key, new Entry(response, System.nanoTime() + ttlNanos, directory == null ? null : normalize(directory)));
+      totalBytes += response.length;
+      evictIfNeeded();
+   }
+
+   // Invalida las respuestas que dependen del directorio que contiene al archivo modificado
+   public synchronized void invalidateFile(String fileName) {
+      if (entries.isEmpty()) {
+         return;
+      }
+      Path directory = normalize(Path.of(fileName)).getParent();
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+         Entry entry = iterator.next().getValue();
+         if (entry.directory != null && entry.directory.equals(directory)) {
+            totalBytes -= entry.response.length;
+            iterator.remove();
+         }
+      }
+   }
+
+   private void remove(String key) {
+      Entry old = entries.remove(key);
+      if (old != null) {
+         totalBytes -= old.response.length;
+      }
+   }
+
+   private void evictIfNeeded() {
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (totalBytes > maxBytes && iterator.hasNext()) {
+         totalBytes -= iterator.next().getValue().response.length;
+         iterator.remove();
+      }
+   }
+
+   private static Path normalize(Path path) {
+      return path.toAbsolutePath().normalize();
+   }
+
+   // xxHash64 (https://github.com/Cyan4973/xxHash)
+   private static final long PRIME1 = 0x9E3779B185EBCA87L;
+   private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+   private static final long PRIME3 = 0x165667B19E3779F9L;
+   private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+   private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+   private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+   private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+   public static long xxHash64(byte[] data, int offset, int length, long seed) {
+      int end = offset + length;
+      int p = offset;
+      long hash;
+
+      if (length >= 32) {
+         long v1 = seed + PRIME1 + PRIME2;
+         long v2 = seed + PRIME2;
+         long v3 = seed;
+         long v4 = seed - PRIME1;
+         int limit = end - 32;
+         do {
+            v1 = round(v1, (long) LONG_LE.get(data, p));
+            v2 = round(v2, (long) LONG_LE.get(data, p + 8));
+            v3 = round(v3, (long) LONG_LE.get(data, p + 16));
+            v4 = round(v4, (long) LONG_LE.get(data, p + 24));
+            p += 32;
+         } while (p <= limit);
+
+         hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+         hash = mergeRound(hash, v1);
+         hash = mergeRound(hash, v2);
+         hash = mergeRound(hash, v3);
+         hash = mergeRound(hash, v4);
+      } else {
+         hash = seed + PRIME5;
+      }
+
+      hash += length;
+
+      while (p + 8 <= end) {
+         hash ^= round(0, (long) LONG_LE.get(data, p));
+         hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+         p += 8;
+      }
+      if (p + 4 <= end) {
+         hash ^= ((int) INT_LE.get(data, p) & 0xFFFFFFFFL) * PRIME1;
+         hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+         p += 4;
+      }
+      while (p < end) {
+         hash ^= (data[p] & 0xFF) * PRIME5;
+         hash = Long.rotateLeft(hash, 11) * PRIME1;
+         p++;
+      }
+
+      hash ^= hash >>> 33;
+      hash *= PRIME2;
+      hash ^= hash >>> 29;
+      hash *= PRIME3;
+      hash ^= hash >>> 32;
+      return hash;
+   }
+
+   private static long round(long accumulator, long input) {
+      accumulator += input * PRIME2;
+      accumulator = Long.rotateLeft(accumulator, 31);
+      return accumulator * PRIME1;
+   }
+
+   private static long mergeRound(long accumulator, long value) {
+      accumulator ^= round(0, value);
+      return accumulator * PRIME1 + PRIME4;
+   }
+}
@@ -0,0 +1,87 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Configuración del servidor leída de un archivo .properties. Si el archivo no existe se usan los valores por defecto.
+public class ServerConfig {
+
+   public static final String DEFAULT_FILE = "server.properties";
+
+   private final Properties properties;
+
+   private ServerConfig(Properties properties) {
+      this.properties = properties;
+   }
+
+   // Carga la configuración desde el archivo indicado
+   public static ServerConfig load(String fileName) {
+      Properties properties = new Properties();
+      File file = new File(fileName);
+
+      if (file.exists() && file.isFile()) {
+         try (InputStream input = new FileInputStream(file)) {
+            properties.load(input);
+            System.out.println("Configuración cargada desde " + file.getName());
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      }
+
+      return new ServerConfig(properties);
+   }
+
+   public String getString(String key, String defaultValue) {
+      String value = properties.getProperty(key);
+      return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+   }
+
+   public boolean getBoolean(String key, boolean defaultValue) {
+      String value = getString(key, null);
+      return value == null ? defaultValue : Boolean.parseBoolean(value);
+   }
+
+   public int getInt(String key, int defaultValue) {
+      String value = getString(key, null);
+      try {
+         return value == null ? defaultValue : Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+         System.err.println("Valor inválido para " + key + ": " + value);
+         return defaultValue;
+      }
+   }
+
+   public long getLong(String key, long defaultValue) {
+      String value = getString(key, null);
+      try {
+         return value == null ? defaultValue : Long.parseLong(value);
+      } catch (NumberFormatException e) {
+         System.err.println("Valor inválido para " + key + ": " + value);
+         return defaultValue;
+      }
+   }
+
+   public double getDouble(String key, double defaultValue) {
+      String value = getString(key, null);
+      try {
+         return value == null ? defaultValue : Double.parseDouble(value);
+      } catch (NumberFormatException e) {
+         System.err.println("Valor inválido para " + key + ": " + value);
+         return defaultValue;
+      }
+   }
+
+   // Regresa las entradas cuya clave empieza con el prefijo, sin el prefijo. Ej: "mime.svg=image/svg+xml" -> "svg"
+   public Map<String, String> getWithPrefix(String prefix) {
+      Map<String, String> values = new HashMap<>();
+      for (String key : properties.stringPropertyNames()) {
+         if (key.startsWith(prefix)) {
+            values.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+         }
+      }
+      return values;
+   }
+}
@@ -0,0 +1,125 @@
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Ciclo de vida del servidor: apagado ordenado (SIGTERM / Ctrl+C) y recarga de la configuración en caliente.
+// Al apagar se deja de aceptar conexiones, se espera a que terminen las peticiones en curso (con un tiempo límite)
+// y a que se terminen de escribir los archivos pendientes.
+public class ServerLifecycle {
+
+   private final String configFile;
+   private final Consumer<ServerConfig> reloadAction;
+   private Listener listener;
+   private AdmissionController admissionController;
+
+   private volatile long drainTimeoutMs;
+   private volatile boolean stopping = false;
+
+   // Escrituras de archivos en curso (saveFile)
+   private final Object writesLock = new Object();
+   private int pendingWrites = 0;
+
+   private final ScheduledExecutorService configWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "config-watcher");
+      thread.setDaemon(true);
+      return thread;
+   });
+   private long configLastModified;
+
+   public ServerLifecycle(ServerConfig config, String configFile, Consumer<ServerConfig> reloadAction) {
+      this.configFile = configFile;
+      this.reloadAction = reloadAction;
+      this.drainTimeoutMs = config.getLong("shutdown.drainTimeoutMs", 10000);
+      this.configLastModified = new File(configFile).lastModified();
+   }
+
+   // Registra el hook de apagado y empieza a vigilar el archivo de configuración
+   public void start(Listener listener, AdmissionController admissionController, long reloadIntervalMs) {
+      this.listener = listener;
+      this.admissionController = admissionController;
+
+      Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+
+      if (reloadIntervalMs > 0) {
+         configWatcher.scheduleWithFixedDelay(this::checkConfig, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   public boolean isStopping() {
+      return stopping;
+   }
+
+   // Recarga la configuración si el archivo cambió desde la última lectura
+   private void checkConfig() {
+      long lastModified = new File(configFile).lastModified();
+      if (lastModified == configLastModified) {
+         return;
+      }
+      configLastModified = lastModified;
+
+      try {
+         System.out.println("\u001B[36mRecargando configuración...\u001B[0m");
+         ServerConfig config = ServerConfig.load(configFile);
+         drainTimeoutMs = config.getLong("shutdown.drainTimeoutMs", drainTimeoutMs);
+         reloadAction.accept(config);
+      } catch (RuntimeException e) {
+         System.err.println("Error al recargar la configuración: " + e.getMessage());
+      }
+   }
+
+   public void beginWrite() {
+      synchronized (writesLock) {
+         pendingWrites++;
+      }
+   }
+
+   public void endWrite() {
+      synchronized (writesLock) {
+         pendingWrites--;
+         writesLock.notifyAll();
+      }
+   }
+
+   // Espera a que terminen las escrituras pendientes o a que se alcance la fecha límite
+   private boolean awaitWrites(long deadline) throws InterruptedException {
+      synchronized (writesLock) {
+         while (pendingWrites > 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+               return false;
+            }
+            writesLock.wait(remaining);
+         }
+         return true;
+      }
+   }
+
+   public void shutdown() {
+      if (stopping) {
+         return;
+      }
+      stopping = true;
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+
+      System.out.println("\u001B[33mApagando servidor: no se aceptan nuevas conexiones...\u001B[0m");
+      configWatcher.shutdownNow();
+      if (listener != null) {
+         listener.close();
+      }
+
+      try {
+         if (admissionController != null && !admissionController.shutdown(deadline)) {
+            System.err.println("Tiempo de espera agotado, se interrumpen las peticiones en curso");
+         }
+         if (!awaitWrites(deadline)) {
+            System.err.println("Tiempo de espera agotado con escrituras de archivos pendientes");
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+
+      System.out.println("\u001B[33mServidor detenido\u001B[0m");
+   }
+}
@@ -0,0 +1,148 @@
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Fase de arranque previa a abrir el puerto:
+//  1. Recorre el directorio servido y precarga los archivos hasta startup.preloadMaxBytes: los grandes se mapean en
+//     memoria si mmap.enabled=true y el resto se leen una vez para que queden en el cache de páginas del sistema.
+//  2. Ejecuta peticiones sintéticas contra los manejadores, en el mismo proceso, para que la carga de clases
+//     (Gson, StAX, Normalizer, parámetros, etc.) y la compilación JIT no las paguen las primeras peticiones reales.
+// Solo se usan peticiones sin efectos secundarios: el calentamiento nunca escribe ni borra archivos.
+public class StartupWarmup {
+
+   private static final String JSON_SAMPLE = "{\"nombre\":\"José\",\"edad\":30,\"cursos\":[\"Redes\",\"Sistemas\"],\"activo\":true,\"extra\":null}";
+
+   private final WebServer server;
+   private final int iterations;
+   private final int maxDepth;
+   private final int maxFiles;
+   private final long preloadMaxBytes;
+
+   public StartupWarmup(WebServer server, ServerConfig config) {
+      this.server = server;
+      this.iterations = config.getInt("startup.warmupIterations", 300);
+      this.maxDepth = config.getInt("startup.indexMaxDepth", 4);
+      this.maxFiles = config.getInt("startup.indexMaxFiles", 10000);
+      this.preloadMaxBytes = config.getLong("startup.preloadMaxBytes", 64L * 1024 * 1024);
+   }
+
+   public void run() {
+      long start = System.nanoTime();
+      String directory = preloadStaticFiles();
+      long preloaded = System.nanoTime();
+
+      // Los manejadores escriben mucho en consola; durante el calentamiento se descarta esa salida
+      PrintStream console = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      try {
+         for (int i = 0; i < iterations; i++) {
+            runRequests(directory);
+         }
+      } catch (RuntimeException e) {
+         System.err.println("Error durante el calentamiento: " + e);
+      } finally {
+         System.setOut(console);
+      }
+
+      System.out.println("Precarga de archivos en " + TimeUnit.NANOSECONDS.toMillis(preloaded - start) + " ms, calentamiento ("
+              + iterations + " iteraciones) en " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - preloaded) + " ms");
+   }
+
+   // Recorre los archivos servidos precargándolos hasta agotar preloadMaxBytes. Regresa un directorio para calentar
+   // los listados, o null
+   private String preloadStaticFiles() {
+      String firstDirectory = null;
+      int files = 0;
+      int preloaded = 0;
+      long preloadedBytes = 0;
+
+      try (Stream<Path> paths = Files.walk(Path.of(""), maxDepth)) {
+         Iterator<Path> iterator = paths.iterator();
+         while (iterator.hasNext() && files < maxFiles) {
+            Path path = iterator.next();
+            if (path.toString().isEmpty() || server.isProtectedFile(path)) {
+               continue;
+            }
+            if (Files.isDirectory(path)) {
+               if (firstDirectory == null) {
+                  firstDirectory = path.toString().replace('\\', '/');
+               }
+            } else if (Files.isRegularFile(path)) {
+               files++;
+               long size = Files.size(path);
+               if (preloadedBytes + size <= preloadMaxBytes) {
+                  if (!server.preloadFile(path.toFile())) {
+                     readFile(path);
+                  }
+                  preloaded++;
+                  preloadedBytes += size;
+               }
+            }
+         }
+      } catch (IOException | RuntimeException e) {
+         System.err.println("No se pudo recorrer el directorio servido: " + e.getMessage());
+      }
+
+      System.out.println("Archivos servidos: " + files + ", precargados: " + preloaded + " (" + preloadedBytes + " bytes)");
+      return firstDirectory;
+   }
+
+   // Lee el archivo completo y descarta el contenido; la primera descarga ya no espera al disco
+   private static void readFile(Path path) throws IOException {
+      byte[] buffer = new byte[64 * 1024];
+      try (InputStream input = Files.newInputStream(path)) {
+         while (input.read(buffer) != -1) {
+            // Solo se necesita que el sistema cargue las páginas
+         }
+      }
+   }
+
+   private void runRequests(String directory) {
+      // GET con parámetros, archivo (index.html por el envío en bloques) y listado de directorio
+      server.getHandler("/?nombre=Jos%C3%A9+P%C3%A9rez&edad=30&curso=Redes&curso=Sistemas", sink(), null, null);
+      server.getHandler("/", sink(), null, null);
+      if (directory != null) {
+         server.getHandler("/" + directory + "/", sink(), null, null);
+      }
+      server.headHandler("/index.html");
+
+      // POST a "/" solo genera la respuesta (no modifica archivos)
+      post("application/x-www-form-urlencoded", "nombre=Jos%C3%A9+P%C3%A9rez&curso=Redes&curso=Sistemas");
+      post("multipart/form-data; boundary=limite", "--limite\r\nContent-Disposition: form-data; name=\"nombre\"\r\n\r\nJosé\r\n--limite--\r\n");
+      post("application/xml", "<alumno><nombre>José</nombre><curso id=\"1\">Redes</curso></alumno>");
+      post("text/html", "<html><body><p>Canción</p></body></html>");
+      post("text/plain", "Texto con acentos: áéíóú ñ Ü");
+
+      // Un POST de JSON guarda un archivo, así que se calientan directamente la validación y el formateo de Gson
+      server.isValidJson(JSON_SAMPLE);
+      new GsonBuilder().setPrettyPrinting().create().toJson(JsonParser.parseString(JSON_SAMPLE));
+   }
+
+   private void post(String contentType, String body) {
+      byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+      String request = "POST / HTTP/1.1\r\n"
+              + "Content-Type: " + contentType + "\r\n"
+              + "Content-Length: " + bodyBytes.length + "\r\n"
+              + "\r\n"
+              + body;
+      ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream();
+      bodyBuffer.writeBytes(bodyBytes);
+      server.postHandler(request, bodyBuffer, "/");
+   }
+
+   // sendFile cierra el flujo al terminar, así que cada petición usa uno nuevo
+   private static DataOutputStream sink() {
+      return new DataOutputStream(OutputStream.nullOutputStream());
+   }
+}
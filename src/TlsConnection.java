@@ -0,0 +1,377 @@
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+
+// Conexión TLS sobre un socket ya aceptado, implementada con SSLEngine.
+// Ofrece flujos de entrada y salida con los datos en claro (para el Handler) y además se puede usar como canal,
+// así los archivos mapeados se cifran directamente desde el MappedByteBuffer sin copiarlos al heap.
+// Los datos de salida se agrupan en registros completos (16 KB) y los registros cifrados se acumulan hasta el tamaño
+// del buffer de envío del socket antes de escribirse, para no fragmentar las respuestas grandes.
+public class TlsConnection implements WritableByteChannel {
+
+   private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+   // Variable de entorno y propiedad del sistema con la contraseña del almacén de claves.
+   // La contraseña nunca se lee de server.properties, que está en el directorio servido
+   public static final String PASSWORD_ENV = "WEBSERVER_KEYSTORE_PASSWORD";
+   public static final String PASSWORD_PROPERTY = "tls.keystorePassword";
+
+   // Ruta absoluta del almacén de claves configurado (tls.keystore), o null si no se configuró
+   public static Path getKeystorePath(ServerConfig config) {
+      String keystore = config.getString("tls.keystore", "");
+      return keystore.isEmpty() ? null : Path.of(keystore).toAbsolutePath().normalize();
+   }
+
+   // Crea el contexto TLS a partir del almacén de claves configurado. Regresa null si TLS no está activado.
+   // El almacén debe estar fuera del directorio servido y la contraseña se toma de PASSWORD_ENV o PASSWORD_PROPERTY
+   public static SSLContext createContext(ServerConfig config) throws IOException {
+      if (!config.getBoolean("tls.enabled", false)) {
+         return null;
+      }
+
+      if (config.getString("tls.keystorePassword", null) != null) {
+         throw new IOException("tls.keystorePassword no se admite en " + ServerConfig.DEFAULT_FILE
+                 + ", use la variable de entorno " + PASSWORD_ENV + " o -D" + PASSWORD_PROPERTY);
+      }
+      Path keystoreFile = getKeystorePath(config);
+      if (keystoreFile == null) {
+         throw new IOException("TLS activado sin almacén de claves (tls.keystore)");
+      }
+      if (keystoreFile.startsWith(Path.of("").toAbsolutePath())) {
+         throw new IOException("El almacén de claves " + keystoreFile + " está dentro del directorio servido");
+      }
+      String passwordValue = System.getProperty(PASSWORD_PROPERTY, System.getenv(PASSWORD_ENV));
+      if (passwordValue == null) {
+         throw new IOException("Falta la contraseña del almacén de claves (" + PASSWORD_ENV + " o -D" + PASSWORD_PROPERTY + ")");
+      }
+
+      // Reanudación de sesiones sin estado en el servidor (tickets), debe fijarse antes de crear el contexto
+      if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null) {
+         System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(config.getBoolean("tls.sessionTickets", true)));
+      }
+
+      char[] password = passwordValue.toCharArray();
+
+      try (InputStream input = Files.newInputStream(keystoreFile)) {
+         KeyStore keyStore = KeyStore.getInstance(config.getString("tls.keystoreType", "PKCS12"));
+         keyStore.load(input, password);
+
+         KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+         keyManagers.init(keyStore, password);
+
+         SSLContext context = SSLContext.getInstance("TLS");
+         context.init(keyManagers.getKeyManagers(), null, null);
+
+         // Cache de sesiones para reanudar sin repetir el handshake completo
+         SSLSessionContext sessions = context.getServerSessionContext();
+         sessions.setSessionCacheSize(config.getInt("tls.sessionCacheSize", 10000));
+         sessions.setSessionTimeout(config.getInt("tls.sessionTimeoutSeconds", 86400));
+
+         System.out.println("TLS activado con el almacén de claves " + keystoreFile);
+         return context;
+      } catch (IOException e) {
+         throw e;
+      } catch (Exception e) {
+         throw new IOException("No se pudo inicializar TLS: " + e.getMessage(), e);
+      }
+   }
+
+   private final SSLEngine engine;
+   private final InputStream networkInput;     // Respeta el SO_TIMEOUT del socket
+   private final OutputStream networkOutput;
+   private final Socket socket;
+
+   private ByteBuffer netIn;    // Datos cifrados recibidos (modo escritura)
+   private ByteBuffer appIn;    // Datos descifrados pendientes de leer (modo lectura)
+   private ByteBuffer netOut;   // Registros cifrados pendientes de enviar (modo escritura)
+   private final ByteBuffer appOut;   // Datos en claro pendientes de cifrar, un registro (modo escritura)
+   private final byte[] readBuffer;
+   private final int packetSize;
+
+   private boolean closed = false;
+
+   private final InputStream inputStream = new InputStream() {
+      @Override
+      public int read() throws IOException {
+         byte[] single = new byte[1];
+         return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+         return readApplicationData(buffer, offset, length);
+      }
+   };
+
+   private final OutputStream outputStream = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] buffer, int offset, int length) throws IOException {
+         writeApplicationData(buffer, offset, length);
+      }
+
+      @Override
+      public void flush() throws IOException {
+         flushApplicationData();
+         flushNetwork();
+      }
+
+      @Override
+      public void close() throws IOException {
+         TlsConnection.this.close();
+      }
+   };
+
+   public TlsConnection(SSLContext context, Socket socket) throws IOException {
+      this.engine = context.createSSLEngine();
+      this.engine.setUseClientMode(false);
+      this.socket = socket;
+      this.networkInput = socket.getInputStream();
+      this.networkOutput = socket.getOutputStream();
+
+      SSLSession session = engine.getSession();
+      this.packetSize = session.getPacketBufferSize();
+      this.netIn = ByteBuffer.allocate(packetSize);
+      this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+      this.appIn.flip();
+      this.netOut = ByteBuffer.allocate(Math.max(packetSize, socket.getSendBufferSize()));
+      this.appOut = ByteBuffer.allocate(session.getApplicationBufferSize());
+      this.readBuffer = new byte[packetSize];
+   }
+
+   public InputStream getInputStream() {
+      return inputStream;
+   }
+
+   public OutputStream getOutputStream() {
+      return outputStream;
+   }
+
+   public void handshake() throws IOException {
+      engine.beginHandshake();
+      SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+      while (status != SSLEngineResult.HandshakeStatus.FINISHED && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+         switch (status) {
+            case NEED_WRAP:
+               flushNetworkIfNeeded();
+               wrap(EMPTY);
+               break;
+            case NEED_UNWRAP:
+            case NEED_UNWRAP_AGAIN:
+               flushNetwork();   // El cliente necesita lo que ya se envió para responder
+               if (unwrap() < 0) {
+                  throw new SSLException("Conexión cerrada durante el handshake");
+               }
+               break;
+            case NEED_TASK:
+               runDelegatedTasks();
+               break;
+            default:
+               break;
+         }
+         status = engine.getHandshakeStatus();
+      }
+      flushNetwork();
+   }
+
+   private int readApplicationData(byte[] buffer, int offset, int length) throws IOException {
+      while (!appIn.hasRemaining()) {
+         if (unwrap() < 0) {
+            return -1;
+         }
+         // Mensajes posteriores al handshake (KeyUpdate, etc.) pueden requerir una respuesta
+         while (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            wrap(EMPTY);
+            flushNetwork();
+         }
+      }
+      int count = Math.min(length, appIn.remaining());
+      appIn.get(buffer, offset, count);
+      return count;
+   }
+
+   private void writeApplicationData(byte[] buffer, int offset, int length) throws IOException {
+      if (length > 0) {
+         checkOpen();
+      }
+      while (length > 0) {
+         int count = Math.min(length, appOut.remaining());
+         appOut.put(buffer, offset, count);
+         offset += count;
+         length -= count;
+         if (!appOut.hasRemaining()) {
+            flushApplicationData();
+         }
+      }
+   }
+
+   // Cifra lo que haya pendiente en appOut
+   private void flushApplicationData() throws IOException {
+      appOut.flip();
+      while (appOut.hasRemaining()) {
+         flushNetworkIfNeeded();
+         wrap(appOut);
+      }
+      appOut.clear();
+   }
+
+   // Escritura como canal: el contenido se cifra directamente desde el buffer recibido (por ejemplo un archivo mapeado)
+   @Override
+   public int write(ByteBuffer source) throws IOException {
+      checkOpen();
+      flushApplicationData();
+
+      int total = source.remaining();
+      while (source.hasRemaining()) {
+         flushNetworkIfNeeded();
+         wrap(source);
+      }
+      flushNetwork();
+      return total;
+   }
+
+   private SSLEngineResult wrap(ByteBuffer source) throws IOException {
+      while (true) {
+         SSLEngineResult result = engine.wrap(source, netOut);
+         switch (result.getStatus()) {
+            case OK:
+            case CLOSED:
+               if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                  runDelegatedTasks();
+               }
+               return result;
+            case BUFFER_OVERFLOW:
+               flushNetwork();
+               if (netOut.remaining() < engine.getSession().getPacketBufferSize()) {
+                  netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+               }
+               break;
+            default:
+               throw new SSLException("Estado inesperado al cifrar: " + result.getStatus());
+         }
+      }
+   }
+
+   // Descifra un registro. Regresa los bytes de aplicación obtenidos o -1 si la conexión se cerró
+   private int unwrap() throws IOException {
+      while (true) {
+         netIn.flip();
+         appIn.compact();
+         SSLEngineResult result;
+         try {
+            result = engine.unwrap(netIn, appIn);
+         } finally {
+            netIn.compact();
+            appIn.flip();
+         }
+
+         switch (result.getStatus()) {
+            case OK:
+               if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                  runDelegatedTasks();
+               }
+               return result.bytesProduced();
+            case BUFFER_UNDERFLOW:
+               // Falta parte del registro: se lee más de la red
+               if (!netIn.hasRemaining()) {
+                  netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+               }
+               if (readNetwork() < 0) {
+                  return -1;
+               }
+               break;
+            case BUFFER_OVERFLOW:
+               appIn.compact();
+               appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+               appIn.flip();
+               break;
+            case CLOSED:
+               return -1;
+            default:
+               throw new SSLException("Estado inesperado al descifrar: " + result.getStatus());
+         }
+      }
+   }
+
+   // Lee datos cifrados del socket. Puede lanzar SocketTimeoutException sin alterar el estado de la conexión
+   private int readNetwork() throws IOException {
+      int bytesRead = networkInput.read(readBuffer, 0, Math.min(readBuffer.length, netIn.remaining()));
+      if (bytesRead > 0) {
+         netIn.put(readBuffer, 0, bytesRead);
+      }
+      return bytesRead;
+   }
+
+   private void flushNetworkIfNeeded() throws IOException {
+      if (netOut.remaining() < packetSize) {
+         flushNetwork();
+      }
+   }
+
+   private void flushNetwork() throws IOException {
+      if (netOut.position() > 0) {
+         networkOutput.write(netOut.array(), netOut.arrayOffset(), netOut.position());
+         networkOutput.flush();
+         netOut.clear();
+      }
+   }
+
+   private void runDelegatedTasks() {
+      Runnable task;
+      while ((task = engine.getDelegatedTask()) != null) {
+         task.run();
+      }
+   }
+
+   private static ByteBuffer enlarge(ByteBuffer buffer, int minimumCapacity) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimumCapacity));
+      buffer.flip();
+      larger.put(buffer);
+      return larger;
+   }
+
+   private void checkOpen() throws IOException {
+      if (closed) {
+         throw new ClosedChannelException();
+      }
+   }
+
+   @Override
+   public boolean isOpen() {
+      return !closed;
+   }
+
+   // Envía lo pendiente y el aviso de cierre (close_notify), y cierra el socket
+   @Override
+   public void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      if (socket.isClosed()) {
+         return;
+      }
+      try {
+         flushApplicationData();
+         engine.closeOutbound();
+         while (!engine.isOutboundDone()) {
+            flushNetworkIfNeeded();
+            wrap(EMPTY);
+         }
+         flushNetwork();
+      } finally {
+         socket.close();
+      }
+   }
+}
@@ -0,0 +1,227 @@
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Control de tráfico por cliente: limita las peticiones por segundo (por IP y por IP + ruta) y los bytes por segundo
+// de las descargas de archivos y de los cuerpos recibidos. Cada cliente tiene sus propias cubetas, así un cliente que
+// descarga o sube archivos grandes no retrasa las peticiones pequeñas de los demás.
+// Las cubetas de tokens se implementan como GCRA: el estado es un solo instante ("tiempo teórico de llegada") que se
+// actualiza con compareAndSet, sin bloqueos. Las cubetas sin uso se eliminan periódicamente.
+// Las subidas y descargas limitadas esperan en los hilos del pool, por eso cada cliente solo puede tener
+// maxThrottledUploadsPerClient subidas esperando y maxThrottledDownloadsPerClient descargas limitadas en curso;
+// las demás se rechazan con 429 en lugar de ocupar más hilos.
+public class TrafficShaper {
+
+   private static class Limits {
+      final boolean enabled;
+      final long requestInterval;        // ns entre peticiones (0 = sin límite)
+      final long requestTolerance;       // ráfaga permitida, en ns
+      final long routeInterval;
+      final long routeTolerance;
+      final double downloadNanosPerByte; // 0 = sin límite
+      final double uploadNanosPerByte;
+      final long bandwidthBurstBytes;
+      final int maxThrottledUploads;
+      final int maxThrottledDownloads;
+      final long idleNanos;
+
+      Limits(ServerConfig config) {
+         this.enabled = config.getBoolean("shaping.enabled", false);
+         double requestsPerSecond = config.getDouble("shaping.requestsPerSecond", 20);
+         double routeRequestsPerSecond = config.getDouble("shaping.routeRequestsPerSecond", 0);
+         this.requestInterval = interval(requestsPerSecond);
+         this.requestTolerance = (Math.max(1, config.getInt("shaping.requestBurst", 40)) - 1) * requestInterval;
+         this.routeInterval = interval(routeRequestsPerSecond);
+         this.routeTolerance = (Math.max(1, config.getInt("shaping.routeRequestBurst", 10)) - 1) * routeInterval;
+         this.downloadNanosPerByte = nanosPerByte(config.getLong("shaping.downloadBytesPerSecond", 0));
+         this.uploadNanosPerByte = nanosPerByte(config.getLong("shaping.uploadBytesPerSecond", 0));
+         this.bandwidthBurstBytes = config.getLong("shaping.bandwidthBurstBytes", 256 * 1024);
+         this.maxThrottledUploads = Math.max(1, config.getInt("shaping.maxThrottledUploadsPerClient", 2));
+         this.maxThrottledDownloads = Math.max(1, config.getInt("shaping.maxThrottledDownloadsPerClient", 2));
+         this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("shaping.idleTimeoutMs", 60000));
+      }
+
+      private static long interval(double perSecond) {
+         return perSecond > 0 ? (long) (1_000_000_000L / perSecond) : 0;
+      }
+
+      private static double nanosPerByte(long bytesPerSecond) {
+         return bytesPerSecond > 0 ? 1_000_000_000.0 / bytesPerSecond : 0;
+      }
+   }
+
+   // Cubeta de tokens (GCRA). "tat" es el instante en que la cubeta vuelve a estar llena; se crea llena
+   private static class TokenBucket {
+      private final AtomicLong tat;
+
+      TokenBucket(long now) {
+         this.tat = new AtomicLong(now);
+      }
+
+      // Intenta consumir un token. Regresa 0 si se permite o los ns que faltan para que se permita (sin consumir)
+      long tryAcquire(long now, long interval, long tolerance) {
+         while (true) {
+            long current = tat.get();
+            long start = Math.max(current, now);
+            if (start - now > tolerance) {
+               return start - tolerance - now;
+            }
+            if (tat.compareAndSet(current, start + interval)) {
+               return 0;
+            }
+         }
+      }
+
+      // Consume "cost" ns de tokens aunque la cubeta quede en deuda. Regresa los ns que hay que esperar
+      long reserve(long now, long cost, long tolerance) {
+         while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + cost;
+            if (tat.compareAndSet(current, next)) {
+               return Math.max(0, next - tolerance - now);
+            }
+         }
+      }
+
+      boolean isIdle(long now, long idleNanos) {
+         return now - tat.get() > idleNanos;
+      }
+   }
+
+   private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+   private final ConcurrentHashMap<String, Integer> throttled = new ConcurrentHashMap<>();   // subidas y descargas en espera
+   private final AtomicLong lastPurge = new AtomicLong(System.nanoTime());
+   private volatile Limits limits;
+
+   public TrafficShaper(ServerConfig config) {
+      reconfigure(config);
+   }
+
+   public void reconfigure(ServerConfig config) {
+      this.limits = new Limits(config);
+      if (!limits.enabled) {
+         buckets.clear();
+      }
+   }
+
+   public boolean isEnabled() {
+      return limits.enabled;
+   }
+
+   // Comprueba los límites de peticiones del cliente y de la ruta (método + recurso sin parámetros).
+   // Regresa 0 si la petición se atiende o los segundos a indicar en Retry-After si se rechaza con 429
+   public int checkRequest(InetAddress client, String method, String resource) {
+      Limits current = limits;
+      if (!current.enabled || client == null) {
+         return 0;
+      }
+      long now = System.nanoTime();
+      purgeIdle(now, current);
+
+      String address = client.getHostAddress();
+      long wait = 0;
+      if (current.requestInterval > 0) {
+         wait = bucket("req " + address, now).tryAcquire(now, current.requestInterval, current.requestTolerance);
+      }
+      if (wait == 0 && current.routeInterval > 0) {
+         int queryStart = resource.indexOf('?');
+         String route = method + " " + (queryStart >= 0 ? resource.substring(0, queryStart) : resource);
+         wait = bucket("route " + address + " " + route, now).tryAcquire(now, current.routeInterval, current.routeTolerance);
+      }
+      return wait == 0 ? 0 : (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L));
+   }
+
+   // Indica si una descarga de "bytes" bytes tendrá que esperar por el límite de descarga (excede la ráfaga permitida)
+   public boolean isDownloadThrottled(InetAddress client, long bytes) {
+      Limits current = limits;
+      return current.enabled && current.downloadNanosPerByte > 0 && client != null && bytes > current.bandwidthBurstBytes;
+   }
+
+   // Reserva un lugar para una descarga limitada del cliente. Regresa 0 si puede empezar (se libera con releaseDownload),
+   // o los segundos a indicar en Retry-After si el cliente ya tiene el máximo de descargas limitadas en curso
+   public int acquireDownload(InetAddress client, long bytes) {
+      Limits current = limits;
+      String key = "down " + client.getHostAddress();
+      if (throttled.merge(key, 1, Integer::sum) > current.maxThrottledDownloads) {
+         release(key);
+         return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds((long) (bytes * current.downloadNanosPerByte) + 999_999_999L));
+      }
+      return 0;
+   }
+
+   public void releaseDownload(InetAddress client) {
+      release("down " + client.getHostAddress());
+   }
+
+   // Espera lo necesario para no superar los bytes por segundo de descarga del cliente
+   public void throttleDownload(InetAddress client, long bytes) {
+      Limits current = limits;
+      sleep(reserve(client, "down ", current.downloadNanosPerByte, bytes, current));
+   }
+
+   // Espera lo necesario para no superar los bytes por segundo de subida del cliente. Regresa 0 si se puede seguir
+   // recibiendo, o los segundos a indicar en Retry-After si el cliente ya tiene el máximo de subidas esperando
+   public int throttleUpload(InetAddress client, long bytes) {
+      Limits current = limits;
+      long wait = reserve(client, "up ", current.uploadNanosPerByte, bytes, current);
+      if (wait == 0) {
+         return 0;
+      }
+      String key = "up " + client.getHostAddress();
+      if (throttled.merge(key, 1, Integer::sum) > current.maxThrottledUploads) {
+         release(key);
+         return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L));
+      }
+      try {
+         sleep(wait);
+      } finally {
+         release(key);
+      }
+      return 0;
+   }
+
+   // Tamaño de bloque recomendado al enviar un archivo: con límite de descarga se envía en bloques pequeños
+   // para que la espera se reparta a lo largo de la transferencia en lugar de acumularse al final
+   public int downloadChunkSize(int defaultSize) {
+      Limits current = limits;
+      return current.enabled && current.downloadNanosPerByte > 0 ? (int) Math.min(defaultSize, Math.max(1024, (long) (100_000_000 / current.downloadNanosPerByte))) : defaultSize;
+   }
+
+   // Consume los bytes de la cubeta del cliente. Regresa los ns que hay que esperar (0 si no hay límite)
+   private long reserve(InetAddress client, String kind, double nanosPerByte, long bytes, Limits current) {
+      if (!current.enabled || nanosPerByte == 0 || client == null || bytes <= 0) {
+         return 0;
+      }
+      long now = System.nanoTime();
+      return bucket(kind + client.getHostAddress(), now).reserve(now, (long) (bytes * nanosPerByte), (long) (current.bandwidthBurstBytes * nanosPerByte));
+   }
+
+   private static void sleep(long nanos) {
+      if (nanos > 0) {
+         try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private void release(String key) {
+      throttled.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+   }
+
+   private TokenBucket bucket(String key, long now) {
+      TokenBucket bucket = buckets.get(key);
+      return bucket != null ? bucket : buckets.computeIfAbsent(key, k -> new TokenBucket(now));
+   }
+
+   // Una cubeta inactiva está llena, eliminarla no cambia el resultado. Solo un hilo hace la limpieza en cada intervalo
+   private void purgeIdle(long now, Limits current) {
+      long last = lastPurge.get();
+      if (now - last < current.idleNanos || !lastPurge.compareAndSet(last, now)) {
+         return;
+      }
+      buckets.values().removeIf(bucket -> bucket.isIdle(now, current.idleNanos));
+   }
+}
@@ -2,29 +2,52 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.Normalizer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.SSLContext;
 
 public class WebServer {
    
-   int PORT = 8000;
-   private static final int THREAD_POOL_SIZE = 10; // Tamaño del pool de hilos
-   private ServerSocket serverSocket;
-   private ExecutorService threadPool;
+   int PORT = 8000;   // Puerto por defecto si no se configura server.port
+   private static final int THREAD_POOL_SIZE = 10; // Tamaño del pool de hilos (por defecto)
+   private Listener listener;
+   private AdmissionController admissionController;
+   private ServerLifecycle lifecycle;
+   private volatile ServerConfig config;
+   private volatile boolean utf8Responses;   // true: texto en UTF-8, false: texto plegado a ASCII
+   private volatile BodyValidator bodyValidator;
+   private MappedFileCache mappedFiles;
+   private ResponseCache responseCache;
+   private RequestRecorder requestRecorder;
+   private TrafficShaper trafficShaper;
+   private volatile boolean ready = false;   // true cuando el servidor ya acepta conexiones (GET /health)
+   private SSLContext tlsContext;   // null si TLS no está activado
+   private volatile int readTimeoutMs = 3000;   // Tiempo de espera para terminar de recibir una petición
+   private volatile int maxParameters = 256;      // Límites para query strings y formularios
+   private volatile int maxParametersBytes = 1024 * 1024;
+   private volatile int maxBatchEntries = 1000;
+   private volatile long maxBatchBytes = 64L * 1024 * 1024;
+   private static final int FILE_CHUNK_SIZE = 16 * 1024;   // Tamaño máximo de datos en un registro TLS
    
-   // Tabla de mime types
-   private static final Map<String, String> MIME_TYPES = new HashMap<>() {{
+   // Tabla de mime types por defecto, se puede ampliar o sobrescribir con entradas "mime.<extension>" en la configuración
+   private static final Map<String, String> DEFAULT_MIME_TYPES = new HashMap<>() {{
       put("txt", "text/plain");
       put("html", "text/html");
       put("htm", "text/html");
@@ -39,6 +62,7 @@ public class WebServer {
       put("ico", "image/x-icon");
       put("pdf", "application/pdf");
       put("zip", "application/zip");
+      put("tar", "application/x-tar");
       put("doc", "application/msword");
       put("xls", "application/vnd.ms-excel");
       put("ppt", "application/vnd.ms-powerpoint");
@@ -46,6 +70,9 @@ public class WebServer {
       put("tex", "application/x-tex");
    }};
    
+   // Tabla de mime types en uso
+   private static final Map<String, String> MIME_TYPES = new ConcurrentHashMap<>(DEFAULT_MIME_TYPES);
+   
    // Tabla de códigos de estado HTTP y sus mensajes
    private static final Map<Integer, String> HTTP_STATUS_CODES = new HashMap<>() {{
       put(200, "OK");
@@ -55,6 +82,9 @@ public class WebServer {
       put(403, "Forbidden");
       put(404, "Not Found");
       put(405, "Method Not Allowed");
+      put(429, "Too Many Requests");
+      put(500, "Internal Server Error");
+      put(503, "Service Unavailable");
    }};
    
    
@@ -71,21 +101,66 @@ public class WebServer {
       
       public void run() {
          try {
-            dataOutput = new DataOutputStream(socket.getOutputStream());
-            dataInput = new DataInputStream(socket.getInputStream());
+            // Con TLS los flujos y el canal descifran y cifran sobre el mismo socket; el handshake respeta el tiempo de espera
+            WritableByteChannel channel;
+            if (tlsContext != null) {
+               socket.setSoTimeout(readTimeoutMs);
+               TlsConnection tls = new TlsConnection(tlsContext, socket);
+               // Un cliente sin TLS, con un certificado rechazado o que no termina el handshake solo cierra su conexión
+               try {
+                  tls.handshake();
+               } catch (IOException e) {
+                  System.err.println("Handshake TLS fallido con " + socket.getInetAddress().getHostAddress() + ": " + e.getMessage());
+                  return;
+               }
+               dataOutput = new DataOutputStream(tls.getOutputStream());
+               dataInput = new DataInputStream(tls.getInputStream());
+               channel = tls;
+            } else {
+               dataOutput = new DataOutputStream(socket.getOutputStream());
+               dataInput = new DataInputStream(socket.getInputStream());
+               channel = socket.getChannel();
+            }
             
             ByteArrayOutputStream auxBuffer = new ByteArrayOutputStream();
             ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream();
             byte[] buffer = new byte[65535];
             int bytesRead = 0;
             int totalBytesReceived = 0;
+            // Línea de petición (metodo, recurso y protocolo) en cuanto se recibe, y segundos de Retry-After si se rechaza
+            String[] requestLine = null;
+            int retryAfter = 0;
             
-            socket.setSoTimeout(3000);
+            socket.setSoTimeout(readTimeoutMs);
             try {
                while (true) {
                   bytesRead = dataInput.read(buffer);
                   auxBuffer.write(buffer, 0, bytesRead);
                   totalBytesReceived += bytesRead;
+                  
+                  // El límite de peticiones (por IP o por ruta) se comprueba con la línea de petición, antes de recibir y
+                  // limitar el cuerpo, así una petición rechazada no ocupa el hilo durante la subida
+                  if (requestLine == null) {
+                     String received = auxBuffer.toString(StandardCharsets.UTF_8);
+                     int lineEnd = received.indexOf("\r\n");
+                     if (lineEnd < 0) {
+                        continue;
+                     }
+                     requestLine = received.substring(0, lineEnd).split(" ");
+                     if (requestLine.length == 3) {
+                        retryAfter = trafficShaper.checkRequest(socket.getInetAddress(), requestLine[0].toUpperCase(), decodeResource(requestLine[1]));
+                        if (retryAfter > 0) {
+                           break;
+                        }
+                     }
+                  }
+                  // Si el cliente ya tiene el máximo de subidas esperando por su límite de bytes, se deja de leer y se responde 429
+                  if (requestLine.length == 3) {
+                     retryAfter = trafficShaper.throttleUpload(socket.getInetAddress(), bytesRead);
+                     if (retryAfter > 0) {
+                        break;
+                     }
+                  }
                }
             } catch (Exception e) {
                System.out.println("Tiempo de espera alcanzado. Finalizando recepción.");
@@ -98,6 +173,21 @@ public class WebServer {
                return;
             }
             
+            // Momento en que se terminó de recibir la petición, para medir el tiempo de procesamiento
+            long receivedAt = System.currentTimeMillis();
+            long processingStart = System.nanoTime();
+            
+            // Petición rechazada por el control de tráfico sin recibir el resto del cuerpo
+            if (retryAfter > 0) {
+               String[] requestParts = auxBuffer.toString(StandardCharsets.UTF_8).split("\r\n");
+               String bodyResponse = "Demasiadas peticiones, intente mas tarde";
+               String tooManyRequests = createHeadRetryAfter(429, "text/plain", bodyResponse.length(), retryAfter) + bodyResponse;
+               dataOutput.write(tooManyRequests.getBytes(StandardCharsets.UTF_8));
+               dataOutput.flush();
+               recordRequest(requestLine[0].toUpperCase(), requestLine[1], requestParts, new ByteArrayOutputStream(), receivedAt, processingStart, tooManyRequests);
+               return;
+            }
+            
             // Copiamos el cuerpo de la petición a un buffer separado, se usa en POST si contiene un archivo
             bodyBuffer.write(auxBuffer.toByteArray(), auxBuffer.toString(StandardCharsets.UTF_8).lastIndexOf("\r\n\r\n") + 4, totalBytesReceived - auxBuffer.toString(StandardCharsets.UTF_8).lastIndexOf("\r\n\r\n") - 4);
             
@@ -128,13 +218,37 @@ public class WebServer {
             // Obtenemos el metodo, el recurso y el cuerpo de la petición HTTP (si lo tiene).
             // El recurso y el cuerpo de la petición se decodifican para evitar problemas con los espacios y caracteres especiales.
             String method = firstHeadParts[0].toUpperCase();
-            String resource = URLDecoder.decode(firstHeadParts[1], StandardCharsets.UTF_8);
+            // Los parámetros (query string) se dejan codificados, se decodifica cada nombre y valor por separado al analizarlos
+            String resource = decodeResource(firstHeadParts[1]);
+            
+            // Los archivos internos del servidor no se sirven ni se modifican por HTTP
+            if (isProtectedPath(resource)) {
+               String forbiddenResponse = createTextResponse(403, "text/plain", "Acceso denegado");
+               dataOutput.write(forbiddenResponse.getBytes(StandardCharsets.UTF_8));
+               dataOutput.flush();
+               recordRequest(method, firstHeadParts[1], requestParts, bodyBuffer, receivedAt, processingStart, forbiddenResponse);
+               return;
+            }
+            
+            // Si la respuesta no tiene efectos secundarios y ya se generó antes para la misma petición, se envía desde el cache
+            String cacheKey = null;
+            if (responseCache.isEnabled() && isCacheable(method, resource, getHeaderValue(requestParts, "Content-Type"))) {
+               cacheKey = ResponseCache.keyOf(utf8Responses, method, resource, getHeaderValue(requestParts, "Content-Type"), bodyBuffer.toByteArray());
+               byte[] cachedResponse = responseCache.get(cacheKey);
+               if (cachedResponse != null) {
+                  System.out.println("Respuesta enviada desde el cache");
+                  dataOutput.write(cachedResponse);
+                  dataOutput.flush();
+                  recordRequest(method, firstHeadParts[1], requestParts, bodyBuffer, receivedAt, processingStart, new String(cachedResponse, 0, 12, StandardCharsets.US_ASCII));
+                  return;
+               }
+            }
             
             String responseForClient = "";
             
             switch (method) {
                case "GET":
-                  responseForClient = getHandler(resource, dataOutput);
+                  responseForClient = getHandler(resource, dataOutput, channel, socket.getInetAddress());
                   break;
                
                case "POST":
@@ -162,14 +276,25 @@ public class WebServer {
                   break;
             }
 
-            dataOutput.write(responseForClient.getBytes(StandardCharsets.UTF_8));
+            byte[] responseBytes = responseForClient.getBytes(StandardCharsets.UTF_8);
+            dataOutput.write(responseBytes);
             dataOutput.flush();
             
+            if (cacheKey != null && isCacheableResponse(responseForClient)) {
+               // Los listados de directorios dependen de los archivos del directorio
+               Path listedDirectory = method.equals("GET") && !resource.contains("?") ? Path.of(resource.substring(1)) : null;
+               responseCache.put(cacheKey, responseBytes, listedDirectory);
+            }
+            
+            recordRequest(method, firstHeadParts[1], requestParts, bodyBuffer, receivedAt, processingStart, responseForClient);
+            
          } catch (IOException e) {
             throw new RuntimeException(e);
          } finally {
             try {
-               dataOutput.close();
+               if (dataOutput != null) {
+                  dataOutput.close();
+               }
                socket.close();
             } catch (IOException e) {
                e.printStackTrace();
@@ -178,56 +303,149 @@ public class WebServer {
       }
    }
    
-   // Metodo para obtener parametros de una petición. Recibe una cadena de formato "nombre=valor&nombre2=valor2"
-   public Map<String, String> getParameters(String parameters) {
-      Map<String, String> params = new HashMap<>();
-      
-      String[] pairs = parameters.split("&");
-      
-      for (String pair : pairs) {
-         String[] keyValue = pair.split("=");
-         
-         // Si el parámetro tiene valor en cierta key, se agrega al mapa
-         // Si no tiene valor, se agrega a su key una cadena vacía
-         if (keyValue.length == 2) {
-            params.put(keyValue[0], keyValue[1]);
-         } else {
-            params.put(keyValue[0], "");
+   // Decodifica la ruta del recurso; los parámetros (query string) se dejan codificados
+   public static String decodeResource(String target) {
+      int queryStart = target.indexOf('?');
+      if (queryStart >= 0) {
+         return URLDecoder.decode(target.substring(0, queryStart), StandardCharsets.UTF_8) + target.substring(queryStart);
+      }
+      return URLDecoder.decode(target, StandardCharsets.UTF_8);
+   }
+   
+   // Metodo para obtener el valor de una cabecera de la petición, o una cadena vacía si no la tiene
+   public static String getHeaderValue(String[] requestParts, String name) {
+      for (int i = 1; i < requestParts.length && !requestParts[i].isEmpty(); i++) {
+         String part = requestParts[i];
+         if (part.length() > name.length() && part.charAt(name.length()) == ':' && part.regionMatches(true, 0, name, 0, name.length())) {
+            return part.substring(name.length() + 1).trim();
          }
       }
-      
-      return params;
+      return "";
+   }
+   
+   // Peticiones cuya respuesta depende solo de la propia petición (o de un listado de directorio) y no modifican nada:
+   // GET con parámetros, GET de un directorio y POST a la raíz con contenido que solo se valida y se regresa
+   public boolean isCacheable(String method, String resource, String contentType) {
+      if (method.equals("GET")) {
+         return resource.contains("?") || (resource.endsWith("/") && resource.length() > 1);
+      }
+      if (method.equals("POST") && resource.equals("/")) {
+         return contentType.equals("application/x-www-form-urlencoded")
+                 || contentType.startsWith("multipart/form-data")
+                 || contentType.equals("application/xml")
+                 || contentType.equals("text/html")
+                 || contentType.equals("text/plain");
+      }
+      return false;
+   }
+   
+   // No se guardan respuestas vacías (archivos enviados directamente) ni errores del servidor
+   private static boolean isCacheableResponse(String response) {
+      return !response.isEmpty() && !response.startsWith("HTTP/1.1 5");
+   }
+   
+   // Registra la petición en la captura de tráfico (si está activa). "target" es el recurso sin decodificar, tal como
+   // llegó en la línea de la petición, para reproducirla igual. Las respuestas vacías son archivos enviados con 200
+   private void recordRequest(String method, String target, String[] requestParts, ByteArrayOutputStream bodyBuffer, long receivedAt, long processingStart, String response) {
+      if (requestRecorder.isEnabled()) {
+         int status = response.length() >= 12 ? Integer.parseInt(response.substring(9, 12)) : 200;
+         requestRecorder.record(method, target, requestParts, bodyBuffer.toByteArray(), receivedAt, System.nanoTime() - processingStart, status);
+      }
+   }
+   
+   // Rutas que nunca se sirven ni se modifican por HTTP (se responde 403): la configuración (server.properties),
+   // el almacén de claves TLS, archivos y directorios ocultos (que empiezan con "."), todo lo que quede fuera del
+   // directorio servido y la captura de peticiones, aunque se haya configurado dentro del directorio servido
+   public boolean isProtectedPath(String resource) {
+      int queryStart = resource.indexOf('?');
+      String path = queryStart >= 0 ? resource.substring(0, queryStart) : resource;
+      try {
+         return isProtectedFile(Path.of(path.startsWith("/") ? path.substring(1) : path));
+      } catch (InvalidPathException e) {
+         return true;
+      }
+   }
+   
+   public boolean isProtectedFile(Path file) {
+      Path absolute = file.toAbsolutePath().normalize();
+      Path served = Path.of("").toAbsolutePath();
+      if (!absolute.startsWith(served)) {
+         return true;
+      }
+      for (Path part : served.relativize(absolute)) {
+         if (part.toString().startsWith(".")) {
+            return true;
+         }
+      }
+      if (absolute.equals(Path.of(ServerConfig.DEFAULT_FILE).toAbsolutePath().normalize())) {
+         return true;
+      }
+      Path keystore = TlsConnection.getKeystorePath(config);
+      if (keystore != null && absolute.equals(keystore)) {
+         return true;
+      }
+      for (Path protectedPath : requestRecorder.getCapturePaths()) {
+         if (absolute.startsWith(protectedPath)) {
+            return true;
+         }
+      }
+      return false;
    }
    
-   public String getHandler(String resource, DataOutputStream dataOutput) {
+   // Metodo para obtener parametros de una petición. Recibe una cadena codificada de formato "nombre=valor&nombre2=valor2"
+   // Si un parámetro no tiene valor se le asigna una cadena vacía. Lanza IllegalArgumentException si se exceden los límites
+   public ParameterList getParameters(String parameters) {
+      return ParameterList.parse(parameters, maxParameters, maxParametersBytes);
+   }
+   
+   public ParameterList getParameters(byte[] parameters) {
+      return ParameterList.parse(parameters, 0, parameters.length, maxParameters, maxParametersBytes);
+   }
+   
+   // Metodo para mostrar los parametros en el cuerpo de una respuesta, un "nombre: valor" por línea
+   public String formatParameters(ParameterList parameters) {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < parameters.size(); i++) {
+         text.append(parameters.getName(i)).append(": ").append(parameters.getValue(i)).append('\n');
+      }
+      return text.toString();
+   }
+   
+   public String getHandler(String resource, DataOutputStream dataOutput, WritableByteChannel channel, InetAddress client) {
       String response = "";
       String bodyResponse = "";
       
+      // Estado del servidor para balanceadores y orquestadores: 200 si está listo, 503 si está arrancando o apagándose
+      if (resource.equals("/health")) {
+         boolean healthy = ready && !lifecycle.isStopping();
+         String status = healthy ? "OK\n" : "NO DISPONIBLE\n";
+         return createTextResponse(healthy ? 200 : 503, "text/plain", admissionController != null ? status + admissionController.getStats() : status);
+      }
+      
       // Si la petición contiene parámetros
       if (resource.contains("?")) {
          System.out.println("Petición con parámetros");
          resource = resource.substring(resource.indexOf("?") + 1);   // Eliminar el recurso de la petición y obtener solo los parámetros
          
          // Obtener los parámetros de la petición
-         Map<String, String> parameters = getParameters(resource);
+         ParameterList parameters;
+         try {
+            parameters = getParameters(resource);
+         } catch (IllegalArgumentException e) {
+            return createTextResponse(400, "text/plain", e.getMessage());
+         }
          
          // Agregar los parámetros al cuerpo de la respuesta
-         for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            //System.out.println("Parámetro: " + entry.getKey() + " Tiene: " + entry.getValue());
-            bodyResponse += entry.getKey() + ": " + entry.getValue() + "\n";
-         }
+         bodyResponse = formatParameters(parameters);
          
          // Crear la respuesta HTTP
-         bodyResponse = deleteAcents(bodyResponse);
-         response = createHead(200, "text/plain", bodyResponse.length());
-         response += bodyResponse;
-         return response;
+         return createTextResponse(200, "text/plain", bodyResponse);
       }
       
       // Si no hay parámetros, se envía el archivo solicitado o el index.html
       if (resource.equals("/") || resource.equals("/index.html") || resource.equals("/index.htm") || resource == null) {
          // Enviar el archivo index.html
-         sendFile("index.html", dataOutput);
+         sendFile("index.html", dataOutput, channel, client);
 
       } else {
          resource = resource.substring(1); // Eliminar la barra inicial
@@ -237,7 +455,7 @@ public class WebServer {
          // si el archivo existe y el ultimo caracter del recurso es No es un slash entonces se envia el archivo
          if (file.exists() && file.isFile() && resource.charAt(resource.length() - 1) != '/') {
             // Enviar el archivo
-            sendFile(resource, dataOutput);
+            sendFile(resource, dataOutput, channel, client);
             
          } else if (file.exists() && file.isDirectory() && resource.charAt(resource.length() - 1) == '/') { // Si el recurso es un directorio y termina en /
             // Obtener la lista de archivos del directorio
@@ -245,12 +463,12 @@ public class WebServer {
             
             bodyResponse += "Archivos en el directorio:\n";
             for (String fileName : fileNames) {
-               bodyResponse += fileName + "\n";
+               if (!isProtectedFile(file.toPath().resolve(fileName))) {
+                  bodyResponse += fileName + "\n";
+               }
             }
             
-            bodyResponse = deleteAcents(bodyResponse);
-            response = createHead(200, "text/plain", bodyResponse.length());
-            response += bodyResponse;
+            response = createTextResponse(200, "text/plain", bodyResponse);
             
          } else if (file.exists() && file.isDirectory() && resource.charAt(resource.length() - 1) != '/') { // Si el recurso es un directorio y no termina en /
             // Simulación de redireccionamiento
@@ -276,7 +494,7 @@ public class WebServer {
       String contentType = "";
       String response = "";
       String boundary = "";   // Si la petición es de tipo multipart/form-data
-      Map<String, String> parameters;
+      ParameterList parameters;
       
       // Buscar la cabecera Content-Length en la petición HTTP
       for (String part : requestParts) {
@@ -297,14 +515,14 @@ public class WebServer {
       if (contentLength > 0) {
          switch (contentType) {
             case "application/x-www-form-urlencoded":
-               // Extraer los parámetros del cuerpo de la petición y agregarlos al cuerpo de la respuesta
-               bodyRequest = URLDecoder.decode(request.substring(request.lastIndexOf("\r\n\r\n") + 4), StandardCharsets.UTF_8);
-               parameters = getParameters(bodyRequest);
-               
-               bodyRequest = "";
-               for (Map.Entry<String, String> entry : parameters.entrySet()) {
-                  bodyRequest += entry.getKey() + ": " + entry.getValue() + "\n";
+               // Extraer los parámetros del cuerpo de la petición (sin decodificar) y agregarlos al cuerpo de la respuesta
+               try {
+                  parameters = getParameters(bodyBuffer.toByteArray());
+               } catch (IllegalArgumentException e) {
+                  response = createTextResponse(400, "text/plain", e.getMessage());
+                  break;
                }
+               bodyRequest = formatParameters(parameters);
                
                if (!resource.equals("/")) {
                   int statusUpdateForm = updateFormSimulation(resource.substring(1), parameters);
@@ -319,32 +537,29 @@ public class WebServer {
                   }
                   break;
                } else {
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "text/plain", bodyRequest.length());
-                  response += bodyRequest;
+                  response = createTextResponse(200, "text/plain", bodyRequest);
                   break;
                }
                
             case "multipart/form-data":
-               // Construir una cadena en formato nombre=valor&nombre2=valor2
+               // Agregar cada parte del formulario como un parámetro (los valores no van codificados)
                String[] parts = request.split("--" + boundary);
+               parameters = new ParameterList(parts.length);
                
                for (String part : parts) {
                   if (part.contains("Content-Disposition")) {
                      String[] disposition = part.split("\r\n");
                      String name = disposition[1].split("name=\"")[1].split("\"")[0];
                      String value = part.substring(part.indexOf("\r\n\r\n") + 4, part.lastIndexOf("\r\n"));
-                     bodyRequest += name + "=" + value + "&";
+                     parameters.add(name, value);
                   }
                }
-               bodyRequest = bodyRequest.substring(0, bodyRequest.length() - 1); // Eliminar el último &
-               
-               parameters = getParameters(bodyRequest);
                
-               bodyRequest = "";
-               for (Map.Entry<String, String> entry : parameters.entrySet()) {
-                  bodyRequest += entry.getKey() + ": " + entry.getValue() + "\n";
+               if (parameters.size() > maxParameters) {
+                  response = createTextResponse(400, "text/plain", "Se excede el maximo de " + maxParameters + " parametros");
+                  break;
                }
+               bodyRequest = formatParameters(parameters);
                
                if (!resource.equals("/")) {
                   int statusUpdateForm = updateFormSimulation(resource.substring(1), parameters);  // Eliminar la barra inicial
@@ -359,9 +574,7 @@ public class WebServer {
                   }
                   break;
                } else {
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "text/plain", bodyRequest.length());
-                  response += bodyRequest;
+                  response = createTextResponse(200, "text/plain", bodyRequest);
                   break;
                }
             
@@ -369,12 +582,11 @@ public class WebServer {
             case "application/json":
                bodyRequest = URLDecoder.decode(request.substring(request.lastIndexOf("\r\n\r\n") + 4), StandardCharsets.UTF_8);
                if (isValidJson(bodyRequest)) {
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "application/json", bodyRequest.length());
-                  response += bodyRequest;
+                  bodyRequest = encodeText(bodyRequest);
+                  response = createTextResponse(200, "application/json", bodyRequest);
                   
                   // Guardar el archivo JSON en el servidor
-                  saveFile("archivo" + System.currentTimeMillis() + ".json", bodyRequest.getBytes());
+                  saveFile("archivo" + System.currentTimeMillis() + ".json", bodyRequest.getBytes(StandardCharsets.UTF_8));
                   
                } else {
                   bodyRequest = "JSON mal formado";
@@ -386,9 +598,7 @@ public class WebServer {
             case "application/xml":
                bodyRequest = URLDecoder.decode(request.substring(request.lastIndexOf("\r\n\r\n") + 4), StandardCharsets.UTF_8);
                if (isValidXml(bodyRequest)) {
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "application/xml", bodyRequest.length());
-                  response += bodyRequest;
+                  response = createTextResponse(200, "application/xml", bodyRequest);
                } else {
                   bodyRequest = "XML mal formado";
                   response = createHead(400, "text/plain", bodyRequest.length());
@@ -399,9 +609,7 @@ public class WebServer {
             case "text/html":
                bodyRequest = URLDecoder.decode(request.substring(request.lastIndexOf("\r\n\r\n") + 4), StandardCharsets.UTF_8);
                if (isValidHtml(bodyRequest)) {
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "text/html", bodyRequest.length());
-                  response += bodyRequest;
+                  response = createTextResponse(200, "text/html", bodyRequest);
                } else {
                   bodyRequest = "HTML mal formado";
                   response = createHead(400, "text/plain", bodyRequest.length());
@@ -424,9 +632,7 @@ public class WebServer {
                   break;
                } else {
                   bodyRequest = URLDecoder.decode(request.substring(request.lastIndexOf("\r\n\r\n") + 4), StandardCharsets.UTF_8);
-                  bodyRequest = deleteAcents(bodyRequest);
-                  response = createHead(200, "text/plain", bodyRequest.length());
-                  response += bodyRequest;
+                  response = createTextResponse(200, "text/plain", bodyRequest);
                   break;
                }
                
@@ -467,6 +673,18 @@ public class WebServer {
       resource = resource.substring(1);
       System.out.println("resource = " + resource);
       
+      // Extraer el Content-Type de la petición
+      String contentType = "";
+      String[] requestParts = request.split("\r\n");
+      for (String part : requestParts) {
+         if (part.contains("Content-Type")) contentType = part.split(":")[1].trim();
+      }
+      
+      // Si el recurso es un directorio (termina en /) y el cuerpo es un zip o tar, se cargan todos sus archivos en ese directorio
+      if ((resource.isEmpty() || resource.endsWith("/")) && BatchUploader.isArchive(contentType)) {
+         return batchPutHandler(resource, contentType, bodyBuffer);
+      }
+      
       // si el recurso es un directorio se envía un mensaje de error
       File fileResource = new File(resource);
       if (fileResource.isDirectory()) {
@@ -476,13 +694,6 @@ public class WebServer {
          return response;
       }
       
-      // Extraer el Content-Type de la petición
-      String contentType = "";
-      String[] requestParts = request.split("\r\n");
-      for (String part : requestParts) {
-         if (part.contains("Content-Type")) contentType = part.split(":")[1].trim();
-      }
-      
       // verificar que el recurso y el Content-Type coincidan
       String extension = resource.substring(resource.lastIndexOf(".") + 1);
       if (!contentType.equals(MIME_TYPES.get(extension))) {
@@ -494,9 +705,8 @@ public class WebServer {
       }
       
       // Si el Content-Type es Json, se verifica que el contenido sea válido
-      String json = new String(bodyBuffer.toByteArray(), StandardCharsets.UTF_8);
       if (contentType.equals("application/json")) {
-         if (!isValidJson(json)) {
+         if (!isValidJson(bodyBuffer.toByteArray())) {
             bodyRequest = "JSON mal formado";
             response = createHead(400, "text/plain", bodyRequest.length());
             response += bodyRequest;
@@ -535,6 +745,37 @@ public class WebServer {
       return response;
    }
    
+   // PUT de un lote de archivos (zip o tar) sobre un directorio. Ej: PUT /putFiles/ con Content-Type: application/zip
+   // Cada archivo del lote se valida como en un PUT individual y el lote se aplica completo o no se aplica
+   public String batchPutHandler(String directory, String contentType, ByteArrayOutputStream bodyBuffer) {
+      Path targetDir = Path.of(directory.isEmpty() ? "." : directory);
+      if (Files.exists(targetDir) && !Files.isDirectory(targetDir)) {
+         return createTextResponse(400, "text/plain", "El destino del lote no es un directorio");
+      }
+      
+      BatchUploader uploader = new BatchUploader(MIME_TYPES, bodyValidator, this::isProtectedFile, maxBatchEntries, maxBatchBytes);
+      lifecycle.beginWrite();
+      try {
+         List<String> files = uploader.upload(new ByteArrayInputStream(bodyBuffer.toByteArray()), contentType, targetDir);
+         
+         StringBuilder bodyResponse = new StringBuilder("Archivos actualizados: " + files.size() + "\n");
+         for (String file : files) {
+            onFileChanged(targetDir.resolve(file).toString());
+            bodyResponse.append(file).append('\n');
+         }
+         return createTextResponse(200, "text/plain", bodyResponse.toString());
+         
+      } catch (BatchUploader.BatchException e) {
+         System.out.println("Lote rechazado: " + e.getMessage());
+         return createTextResponse(400, "text/plain", e.getMessage());
+      } catch (IOException e) {
+         e.printStackTrace();
+         return createTextResponse(500, "text/plain", "Error al guardar el lote");
+      } finally {
+         lifecycle.endWrite();
+      }
+   }
+   
    // Las peticiones HTTP DELETE se utilizan para eliminar recursos del servidor. Es una petición idempotente.
    // Ej: Eliminar un recurso, eliminar un registro de una base de datos, eliminar un archivo, etc.
    public String deleteHandler(String resource) {
@@ -609,7 +850,8 @@ public class WebServer {
             return response;
          }
          
-         // Si el archivo existe, se elimina
+         // Si el archivo existe, se elimina (antes se libera su mapeo en memoria, si lo tiene)
+         onFileChanged(resource);
          if (file.delete()) {
             bodyResponse = "Archivo eliminado";
             response = createHead(200, "text/plain", bodyResponse.length());
@@ -685,11 +927,7 @@ public class WebServer {
          }
          
          // Guardar el contenido actualizado en el archivo
-         try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            writer.write(fileContent);
-         } catch (IOException e) {
-            e.printStackTrace();
-         }
+         saveFile(fileName, fileContent.getBytes(Charset.defaultCharset()));
          
          bodyResponse = "Datos eliminados del archivo";
          response = createHead(200, "text/plain", bodyResponse.length());
@@ -704,43 +942,52 @@ public class WebServer {
    }
    
    public boolean deleteDataFromJsonFile(File file, String keyToDelete) {
-      boolean found = false;
-      
+      // Leer el contenido del archivo JSON (el archivo se cierra antes de reemplazarlo)
+      StringBuilder jsonContent = new StringBuilder();
       try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-         // Leer el contenido del archivo JSON
-         StringBuilder jsonContent = new StringBuilder();
          String line;
          
          while ((line = reader.readLine()) != null) {
             jsonContent.append(line);
          }
-         
-         // Parsear el contenido como JSON
-         JsonObject jsonObject = JsonParser.parseString(jsonContent.toString()).getAsJsonObject();
-         
-         // Verificar si la clave existe
-         if (jsonObject.has(keyToDelete)) {
-            jsonObject.remove(keyToDelete); // Eliminar la clave
-            found = true;
-            
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            
-            // Guardar el JSON actualizado en el archivo
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-               writer.write(gson.toJson(jsonObject));
-            }
-         }
       } catch (IOException e) {
          e.printStackTrace();
          return false; // Error durante el proceso
       }
       
-      return found; // Devuelve si la clave fue encontrada y eliminada
+      // Parsear el contenido como JSON
+      JsonObject jsonObject = JsonParser.parseString(jsonContent.toString()).getAsJsonObject();
+      
+      // Verificar si la clave existe
+      if (!jsonObject.has(keyToDelete)) {
+         return false;
+      }
+      jsonObject.remove(keyToDelete); // Eliminar la clave
+      
+      Gson gson = new GsonBuilder().setPrettyPrinting().create();
+      
+      // Guardar el JSON actualizado en el archivo. Devuelve si la clave fue eliminada
+      return saveFile(file.getPath(), gson.toJson(jsonObject).getBytes(Charset.defaultCharset()));
    }
    
    // Metodo para eliminar acentos y caracteres especiales de una cadena de texto. Util para evitar problemas con el envio de respuestas HTTP
    public String deleteAcents(String text) {
-      return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("[^\\p{ASCII}]", "");
+      return AsciiTransliterator.toAscii(text);
+   }
+   
+   // Metodo para preparar un texto que se enviará al cliente: se pliega a ASCII salvo que las respuestas sean UTF-8
+   public String encodeText(String text) {
+      return utf8Responses ? text : deleteAcents(text);
+   }
+   
+   // Metodo para crear una respuesta HTTP completa (cabecera y cuerpo) con un cuerpo de texto.
+   // El Content-Length se calcula en bytes UTF-8 para que coincida con lo que realmente se envía.
+   public String createTextResponse(int statusCode, String mimeType, String body) {
+      if (utf8Responses) {
+         return createHead(statusCode, mimeType + "; charset=utf-8", body.getBytes(StandardCharsets.UTF_8).length) + body;
+      }
+      body = deleteAcents(body);
+      return createHead(statusCode, mimeType, body.length()) + body;
    }
    
    // Metodo para crear una respuesta HTTP (cabecera)
@@ -766,13 +1013,76 @@ public class WebServer {
                + "\r\n";
    }
    
-   // Metodo para enviar un archivo al cliente (GET)
-   public void sendFile(String fileToSend, DataOutputStream dataOutput) {
+   // Metodo para crear una respuesta HTTP (cabecera) que indica al cliente cuándo reintentar (503)
+   public String createHeadRetryAfter(int statusCode, String mimeType, long fileSize, int retryAfterSeconds) {
+      return "HTTP/1.1 " + statusCode + " " + HTTP_STATUS_CODES.get(statusCode) + "\r\n"
+              + "Server: Hervert Server/1.0\r\n"
+              + "Date: " + new Date() + "\r\n"
+              + "Content-Type: " + mimeType + "\r\n"
+              + "Content-Length: " + fileSize + "\r\n"
+              + "Retry-After: " + retryAfterSeconds + "\r\n"
+              + "Connection: close\r\n"
+              + "\r\n";
+   }
+   
+   // Metodo para rechazar una conexión cuando el servidor está saturado
+   public void rejectOverloaded(Socket socket, int retryAfterSeconds) {
+      // Con TLS el 503 requeriría un handshake completo en el hilo que acepta conexiones; solo se cierra la conexión
+      if (tlsContext != null) {
+         try {
+            socket.close();
+         } catch (IOException e) {
+            System.err.println("No se pudo cerrar la conexión rechazada: " + e.getMessage());
+         }
+         return;
+      }
+      
+      String bodyResponse = "Servidor saturado, intente mas tarde";
+      String response = createHeadRetryAfter(503, "text/plain", bodyResponse.length(), retryAfterSeconds) + bodyResponse;
+      
+      try (Socket client = socket) {
+         client.getOutputStream().write(response.getBytes(StandardCharsets.UTF_8));
+         client.getOutputStream().flush();
+         client.shutdownOutput();
+      } catch (IOException e) {
+         System.err.println("No se pudo enviar el 503 a " + socket.getInetAddress() + ": " + e.getMessage());
+      }
+   }
+   
+   // Metodo para enviar un archivo al cliente (GET). Si hay límite de descarga, se aplica al cliente indicado.
+   // Una descarga limitada ocupa un hilo del pool mientras espera; si el cliente ya tiene el máximo de descargas
+   // limitadas en curso se responde 429
+   public void sendFile(String fileToSend, DataOutputStream dataOutput, WritableByteChannel channel, InetAddress client) {
+      long fileSize = new File(fileToSend).length();
+      if (!trafficShaper.isDownloadThrottled(client, fileSize)) {
+         sendFileContent(fileToSend, dataOutput, channel, client);
+         return;
+      }
+      
+      int retryAfter = trafficShaper.acquireDownload(client, fileSize);
+      if (retryAfter > 0) {
+         String bodyResponse = "Demasiadas descargas simultaneas, intente mas tarde";
+         try {
+            dataOutput.write((createHeadRetryAfter(429, "text/plain", bodyResponse.length(), retryAfter) + bodyResponse).getBytes(StandardCharsets.UTF_8));
+            dataOutput.close();
+         } catch (IOException e) {
+            System.err.println("No se pudo enviar el 429 a " + client + ": " + e.getMessage());
+         }
+         return;
+      }
+      try {
+         sendFileContent(fileToSend, dataOutput, channel, client);
+      } finally {
+         trafficShaper.releaseDownload(client);
+      }
+   }
+   
+   private void sendFileContent(String fileToSend, DataOutputStream dataOutput, WritableByteChannel channel, InetAddress client) {
       try {
          int bytesRead = 0;
-         byte[] buffer = new byte[1024];
+         int chunkSize = trafficShaper.downloadChunkSize(FILE_CHUNK_SIZE);
+         byte[] buffer = new byte[chunkSize];
          
-         DataInputStream fileInput = new DataInputStream(new FileInputStream(fileToSend));
          File file = new File(fileToSend);
          
          // Obtener el nombre y la extensión del archivo, además del mime type
@@ -786,6 +1096,30 @@ public class WebServer {
          System.out.println("Archivo encontrado: " + file.getName());
          System.out.println("Mime type: " + mimeType);
          
+         // Archivos grandes: se envían desde el mapeo compartido directamente al socket, sin copiarlos al heap
+         MappedFileCache.MappedFile mapped = channel != null ? mappedFiles.acquire(file) : null;
+         if (mapped != null) {
+            try {
+               dataOutput.write(createHead(200, mimeType, mapped.length()).getBytes(StandardCharsets.UTF_8));
+               dataOutput.flush();
+               
+               ByteBuffer content = mapped.slice();
+               while (content.hasRemaining()) {
+                  // El envío se hace por bloques solo para poder aplicar el límite de descarga
+                  int end = trafficShaper.isEnabled() ? Math.min(content.limit(), content.position() + chunkSize) : content.limit();
+                  int written = channel.write(content.duplicate().limit(end));
+                  content.position(content.position() + written);
+                  trafficShaper.throttleDownload(client, written);
+               }
+            } finally {
+               mapped.release();
+            }
+            dataOutput.close();
+            return;
+         }
+         
+         DataInputStream fileInput = new DataInputStream(new FileInputStream(fileToSend));
+         
          // Crear la respuesta HTTP
          String response = createHead(200, mimeType, file.length());
          
@@ -793,11 +1127,12 @@ public class WebServer {
          dataOutput.write(response.getBytes(StandardCharsets.UTF_8));
          dataOutput.flush();
          
-         // Enviar el archivo en bloques de 1024 bytes
+         // Enviar el archivo en bloques del tamaño de un registro TLS; se vacía al final para no fragmentar el envío
          while ((bytesRead = fileInput.read(buffer)) != -1) {
             dataOutput.write(buffer, 0, bytesRead);
-            dataOutput.flush();
+            trafficShaper.throttleDownload(client, bytesRead);
          }
+         dataOutput.flush();
          
          dataOutput.close();
          fileInput.close();
@@ -807,15 +1142,51 @@ public class WebServer {
       }
    }
    
-   public void saveFile(String fileName, byte[] fileBytes) {
-      try (FileOutputStream fileOutput = new FileOutputStream(fileName)) {
-         fileOutput.write(fileBytes);
+   // Guarda el archivo de forma atómica: se escribe en un temporal y después se reemplaza el destino,
+   // así un apagado o error a mitad de la escritura nunca deja un archivo a medias. Regresa false si no se pudo guardar
+   public boolean saveFile(String fileName, byte[] fileBytes) {
+      Path target = Path.of(fileName).toAbsolutePath();
+      Path temp = target.resolveSibling("." + target.getFileName() + ".tmp-" + System.nanoTime());
+      
+      lifecycle.beginWrite();
+      onFileChanged(fileName);
+      try {
+         try (FileOutputStream fileOutput = new FileOutputStream(temp.toFile())) {
+            fileOutput.write(fileBytes);
+         }
+         try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+         }
+         return true;
       } catch (IOException e) {
          e.printStackTrace();
+         try {
+            Files.deleteIfExists(temp);
+         } catch (IOException ignored) {
+            // El temporal se queda, no afecta al archivo original
+         }
+         return false;
+      } finally {
+         onFileChanged(fileName);
+         lifecycle.endWrite();
       }
    }
    
-   public int updateFormSimulation(String form, Map<String, String> parameters) {
+   // Se llama cuando un archivo se crea, reemplaza, modifica o elimina, para invalidar lo que se tenga en memoria de él
+   public void onFileChanged(String fileName) {
+      mappedFiles.invalidate(fileName);
+      responseCache.invalidateFile(fileName);
+   }
+   
+   // Precarga un archivo servido (lo mapea en memoria si es grande y mmap.enabled=true)
+   // Precarga un archivo en el mapeo compartido. Regresa false si el archivo no se sirve mapeado
+   public boolean preloadFile(File file) {
+      return mappedFiles.preload(file);
+   }
+   
+   public int updateFormSimulation(String form, ParameterList parameters) {
       // Abrir el archivo form.txt y gaurdar su contenido en una cadena
       String formFileName = form + ".txt";
       File file = new File(formFileName);
@@ -847,13 +1218,11 @@ public class WebServer {
          }
 
          System.out.println("\nParámetros del formulario entrante:");
-         for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            System.out.println(entry.getKey() + ": " + entry.getValue());
-         }
+         System.out.print(formatParameters(parameters));
 
-         // Actualizar los parámetros del formulario existente con los nuevos parámetros
-         for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            formParameters.put(entry.getKey(), entry.getValue());
+         // Actualizar los parámetros del formulario existente con los nuevos parámetros (si se repite uno, queda el último)
+         for (int i = 0; i < parameters.size(); i++) {
+            formParameters.put(parameters.getName(i), parameters.getValue(i));
          }
 
          System.out.println("\nParámetros del formulario actualizado:");
@@ -862,13 +1231,11 @@ public class WebServer {
          }
          
          // Guardar los parámetros actualizados en el archivo
-         try (BufferedWriter writer = new BufferedWriter(new FileWriter(formFileName))) {
-            for (Map.Entry<String, String> entry : formParameters.entrySet()) {
-               writer.write(entry.getKey() + ": " + entry.getValue() + "\n");
-            }
-         } catch (IOException e) {
-            e.printStackTrace();
+         StringBuilder updatedForm = new StringBuilder();
+         for (Map.Entry<String, String> entry : formParameters.entrySet()) {
+            updatedForm.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
          }
+         saveFile(formFileName, updatedForm.toString().getBytes(Charset.defaultCharset()));
          return 200;
       } else {
          return 404;
@@ -880,14 +1247,24 @@ public class WebServer {
       File file = new File(fileName);
       
       if (file.exists() && file.isFile() && fileName.endsWith(".txt")) { // Mejor usar endsWith para mayor precisión
-         try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, !replace))) {
-            // Si replace es true, el archivo se abre en modo de sobrescritura.
-            // Si replace es false, el archivo se abre en modo de append.
-            writer.write(text);
+         // Si replace es true, el archivo se sobrescribe.
+         // Si replace es false, el texto se agrega al final del contenido actual.
+         // En ambos casos se guarda el archivo completo de forma atómica con saveFile
+         byte[] textBytes = text.getBytes(Charset.defaultCharset());
+         try {
+            if (!replace) {
+               byte[] current = Files.readAllBytes(file.toPath());
+               byte[] appended = Arrays.copyOf(current, current.length + textBytes.length);
+               System.arraycopy(textBytes, 0, appended, current.length, textBytes.length);
+               textBytes = appended;
+            }
          } catch (IOException e) {
             e.printStackTrace();
             return 500; // Código de error para problemas del servidor
          }
+         if (!saveFile(fileName, textBytes)) {
+            return 500;
+         }
          return 200; // Código de éxito
       } else {
          return 404; // Código de error para archivo no encontrado
@@ -904,13 +1281,12 @@ public class WebServer {
       return "";  // Si no se encuentra el valor, se retorna una cadena vacía
    }
    
-   public static boolean isValidJson(String json) {
-      try {
-         JsonParser.parseString(json);
-         return true;
-      } catch (Exception e) {
-         return false;
-      }
+   public boolean isValidJson(String json) {
+      return bodyValidator.isValidJson(json);
+   }
+   
+   public boolean isValidJson(byte[] json) {
+      return bodyValidator.isValidJson(json);
    }
    
    public static boolean isValidHtml(String html) {
@@ -927,38 +1303,96 @@ public class WebServer {
       }
    }
    
-   public static boolean isValidXml(String xml) {
-      try {
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         DocumentBuilder builder = factory.newDocumentBuilder();
-         builder.parse(new ByteArrayInputStream(xml.getBytes()));
-         return true;
-      } catch (Exception e) {
-         return false;
+   public boolean isValidXml(String xml) {
+      return bodyValidator.isValidXml(xml);
+   }
+   
+   // Aplica la configuración (al iniciar y en cada recarga en caliente)
+   private void applyConfig(ServerConfig newConfig) {
+      this.config = newConfig;
+      this.utf8Responses = newConfig.getBoolean("response.utf8", false);
+      this.bodyValidator = new BodyValidator(newConfig);
+      this.readTimeoutMs = newConfig.getInt("request.readTimeoutMs", 3000);
+      this.maxParameters = newConfig.getInt("request.maxParameters", 256);
+      this.maxParametersBytes = newConfig.getInt("request.maxParametersBytes", 1024 * 1024);
+      this.maxBatchEntries = newConfig.getInt("request.maxBatchEntries", 1000);
+      this.maxBatchBytes = newConfig.getLong("request.maxBatchBytes", 64L * 1024 * 1024);
+      
+      if (mappedFiles == null) {
+         mappedFiles = new MappedFileCache(newConfig);
+         responseCache = new ResponseCache(newConfig);
+         requestRecorder = new RequestRecorder(newConfig);
+         trafficShaper = new TrafficShaper(newConfig);
+      } else {
+         mappedFiles.reconfigure(newConfig);
+         responseCache.reconfigure(newConfig);
+         requestRecorder.reconfigure(newConfig);
+         trafficShaper.reconfigure(newConfig);
+      }
+      
+      // Tabla de mime types: valores por defecto más los definidos en la configuración
+      Map<String, String> mimeTypes = new HashMap<>(DEFAULT_MIME_TYPES);
+      mimeTypes.putAll(newConfig.getWithPrefix("mime."));
+      MIME_TYPES.putAll(mimeTypes);
+      MIME_TYPES.keySet().retainAll(mimeTypes.keySet());
+      
+      if (admissionController != null) {
+         admissionController.reconfigure(newConfig, THREAD_POOL_SIZE);
       }
    }
    
    // Constructor
    public WebServer() throws IOException {
+      this(false);
+   }
+   
+   // Con trainingRun = true solo se ejecuta la fase de arranque (precarga y calentamiento) y termina sin abrir el puerto,
+   // para generar un archivo AppCDS con las clases que se cargan (ver main)
+   public WebServer(boolean trainingRun) throws IOException {
+      long startTime = System.nanoTime();
       System.out.println("\u001B[32mIniciando servidor web...\u001B[0m");
       
-      // Crear el socket del servidor y el pool de hilos
-      this.serverSocket = new ServerSocket(PORT);
-      this.threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+      // Cargar la configuración
+      applyConfig(ServerConfig.load(ServerConfig.DEFAULT_FILE));
+      this.tlsContext = TlsConnection.createContext(config);
+      this.lifecycle = new ServerLifecycle(config, ServerConfig.DEFAULT_FILE, this::applyConfig);
       
-      System.out.println("Servidor web iniciado en el puerto \u001B[32m" + PORT + "\u001B[0m");
+      // Precarga de archivos y calentamiento de los manejadores antes de aceptar conexiones
+      new StartupWarmup(this, config).run();
+      if (trainingRun) {
+         System.out.println("Ejecución de entrenamiento terminada en " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+         return;
+      }
+      
+      // Crear el control de admisión (pool de hilos con cola acotada) y los sockets de escucha.
+      // Cada conexión aceptada se asigna a un hilo del pool (o se rechaza si el servidor está saturado)
+      this.admissionController = new AdmissionController(config, THREAD_POOL_SIZE, Handler::new, this::rejectOverloaded);
+      this.listener = new Listener(config, PORT, admissionController::submit);
+      listener.start();
+      
+      // Apagado ordenado y recarga de la configuración en caliente
+      lifecycle.start(listener, admissionController, config.getLong("config.reloadIntervalMs", 2000));
+      ready = true;
+      
+      System.out.println("Servidor web iniciado en el puerto \u001B[32m" + listener.getPort() + "\u001B[0m en "
+              + (System.nanoTime() - startTime) / 1_000_000 + " ms");
       System.out.println("\u001B[34mEsperando conexiones...\n\u001B[0m");
       
-      while (true) {
-         Socket socket = serverSocket.accept();
-         System.out.println("Conexión aceptada desde \u001B[35m" + socket.getInetAddress() + "\u001B[0m");
-         
-         // Asigna la conexión aceptada a un hilo del pool
-         threadPool.execute(new Handler(socket));
+      try {
+         listener.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
       }
    }
    
+   // Arranque con AppCDS (JDK 19 o superior), para no repetir la carga y verificación de clases en cada reinicio:
+   //   java -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=webserver.jsa -cp ... WebServer
+   // o generando el archivo explícitamente con una ejecución de entrenamiento:
+   //   java -XX:ArchiveClassesAtExit=webserver.jsa -cp ... WebServer --cds-training
+   //   java -XX:SharedArchiveFile=webserver.jsa -cp ... WebServer
+   // El classpath debe estar formado solo por archivos .jar (CDS no admite directorios de clases)
    public static void main(String[] args) throws IOException {
-      new WebServer();
+      boolean trainingRun = args.length > 0 && args[0].equals("--cds-training");
+      new WebServer(trainingRun);
    }
 }